@@ -0,0 +1,55 @@
+package com.arotte.aroi;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**DispatchBenchmark.java
+ *
+ * Measures how long the interpreter takes to run scripts,
+ * to compare dispatching on the kind tags of the AST nodes
+ * against the visitor pattern and against running the
+ * linearized Arena form (which is compiled on every run).
+ *
+ * Every script is parsed once, then run WARMUP times to let
+ * the JIT compile the interpreter, then MEASURED times. Run
+ * it once per dispatch mode, each in a fresh JVM:
+ *
+ *   java -cp <classes> com.arotte.aroi.DispatchBenchmark bench/scripts/*.ar
+ *   java -cp <classes> -Daroi.visitorDispatch=true com.arotte.aroi.DispatchBenchmark bench/scripts/*.ar
+ *   java -cp <classes> -Daroi.arena=true com.arotte.aroi.DispatchBenchmark bench/scripts/*.ar
+ */
+public class DispatchBenchmark {
+    private static final int WARMUP = 20;
+    private static final int MEASURED = 30;
+
+    public static void main(String[] args) throws Exception {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        boolean arena = Boolean.getBoolean("aroi.arena");
+        String mode = arena ? "arena"
+                : Boolean.getBoolean("aroi.visitorDispatch") ? "visitor" : "kind switch";
+
+        for (String path : args) {
+            String source = new String(Files.readAllBytes(Paths.get(path)), Charset.defaultCharset());
+            Reporter reporter = new Reporter(System.err);
+            List<Stmt> statements = new Parser(new Scanner(source, reporter).scanTokens(), reporter).parse();
+            if (reporter.hadError) continue;
+
+            // the same interpreter for every run, the scripts only redefine their globals
+            Interpreter interpreter = new Interpreter(discard, reporter);
+            interpreter.setArenaMode(arena);
+            for (int i = 0; i < WARMUP; i++)
+                interpreter.interpret(statements);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED; i++)
+                interpreter.interpret(statements);
+            double millis = (System.nanoTime() - start) / 1e6 / MEASURED;
+
+            System.out.println(String.format("%-12s %8.3f ms/run  %s", mode, millis, path));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.arotte.aroi;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**SimdArrayOps.java
+ *
+ * The bulk operations of ArrayOps with the Vector API: each
+ * loop works on as many doubles at a time as the widest vector
+ * of the CPU holds, and finishes the tail with scalar code.
+ */
+class SimdArrayOps extends ArrayOps {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    double sum(double[] a, int length) {
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+            sums = sums.add(DoubleVector.fromArray(SPECIES, a, i));
+
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) sum += a[i];
+        return sum;
+    }
+
+    @Override
+    double dot(double[] a, double[] b, int length) {
+        DoubleVector sums = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+            sums = DoubleVector.fromArray(SPECIES, a, i).fma(DoubleVector.fromArray(SPECIES, b, i), sums);
+
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) sum += a[i] * b[i];
+        return sum;
+    }
+
+    @Override
+    void scale(double[] a, double factor, double addend, double[] result, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length())
+            DoubleVector.fromArray(SPECIES, a, i).mul(factor).add(addend).intoArray(result, i);
+
+        for (; i < length; i++) result[i] = a[i] * factor + addend;
+    }
+}
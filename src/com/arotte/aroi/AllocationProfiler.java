@@ -0,0 +1,90 @@
+package com.arotte.aroi;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**AllocationProfiler.java
+ *
+ * Attributes the heap allocations of the running thread
+ * to the source lines of the statements that made them.
+ *
+ * The allocation counter of the thread is read before and
+ * after every statement. A statement is only charged for
+ * its own allocations, the bytes allocated by nested
+ * statements (eg. the body of a while loop) are charged
+ * to the lines of those statements.
+ */
+class AllocationProfiler {
+    private static final int TOP_LINES = 10;
+
+    private final com.sun.management.ThreadMXBean threads;
+
+    // bytes and number of executions, indexed by line number
+    // (plain arrays, so that bookkeeping does not allocate)
+    private long[] bytes = new long[256];
+    private long[] executions = new long[256];
+
+    // allocation counter at statement entry, and bytes
+    // already charged to nested statements, per nesting level
+    private long[] started = new long[64];
+    private long[] nested = new long[64];
+    private int depth = 0;
+
+    AllocationProfiler() {
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported())
+            throw new UnsupportedOperationException(
+                    "This JVM cannot measure thread allocations.");
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    void enter() {
+        if (depth == started.length) {
+            started = Arrays.copyOf(started, depth * 2);
+            nested = Arrays.copyOf(nested, depth * 2);
+        }
+        nested[depth] = 0;
+        started[depth++] = threads.getCurrentThreadAllocatedBytes();
+    }
+
+    void exit(int line) {
+        long total = threads.getCurrentThreadAllocatedBytes() - started[--depth];
+
+        if (line >= bytes.length) {
+            int size = Math.max(line + 1, bytes.length * 2);
+            bytes = Arrays.copyOf(bytes, size);
+            executions = Arrays.copyOf(executions, size);
+        }
+        bytes[line] += total - nested[depth];
+        executions[line]++;
+
+        // the enclosing statement must not be charged twice
+        if (depth > 0) nested[depth - 1] += total;
+    }
+
+    /**
+     * Print the lines that allocated the most.
+     * @param out stream to print the report to
+     * @param source the profiled source code, or null if not available
+     */
+    void report(PrintStream out, String source) {
+        String[] sourceLines = source == null ? new String[0] : source.split("\n", -1);
+
+        List<Integer> lines = new ArrayList<>();
+        for (int line = 0; line < bytes.length; line++)
+            if (executions[line] > 0) lines.add(line);
+        lines.sort((a, b) -> Long.compare(bytes[b], bytes[a]));
+
+        out.println("Top allocating lines:");
+        out.println(String.format("%8s %16s %12s", "line", "bytes", "executions"));
+        for (int line : lines.subList(0, Math.min(TOP_LINES, lines.size()))) {
+            String text = line >= 1 && line <= sourceLines.length
+                    ? sourceLines[line - 1].trim() : "";
+            out.println(String.format("%8d %16d %12d   %s",
+                    line, bytes[line], executions[line], text));
+        }
+    }
+}
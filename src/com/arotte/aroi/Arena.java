@@ -0,0 +1,310 @@
+package com.arotte.aroi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**Arena.java
+ *
+ * A program flattened into parallel int arrays, as an
+ * alternative to the object graph of Expr and Stmt nodes.
+ *
+ * Every node is an index into the arrays. Nodes are laid
+ * out in post-order: the nodes of a subtree are contiguous,
+ * children come before their parents, and an expression is
+ * evaluated by scanning its range from first[node] to node
+ * (see ArenaInterpreter). Literal values and variable names
+ * live in a constant pool, operators are stored as TokenType
+ * ordinals, and the statements of a block are a slice of the
+ * lists array. Groupings do not need a node at all.
+ *
+ * An update ("x += e", "x++", ...) is a LOCATE node, which
+ * finds the variable before the value is evaluated, and an
+ * UPDATE node after the value, which writes it.
+ *
+ * A node takes six ints, instead of an object with
+ * references to its children and to whole Tokens.
+ */
+final class Arena {
+    // opcodes of expressions
+    static final int LITERAL = 0;    // c: constant
+    static final int VARIABLE = 1;   // c: name constant
+    static final int ASSIGN = 2;     // a: value, c: name constant
+    static final int UNARY = 3;      // a: operand, c: operator
+    static final int BINARY = 4;     // a: left, b: right, c: operator
+    static final int TEST = 5;       // a: left, b: its LOGICAL node, c: operator
+    static final int LOGICAL = 6;    // a: left, b: right, c: operator
+    static final int LOCATE = 7;     // c: name constant
+    static final int UPDATE = 8;     // a: value, b: 1 if postfix, +2 if "++" or "--", c: operator
+
+    // opcodes of statements
+    static final int EXPRESSION = 9; // a: expression
+    static final int PRINT = 10;     // a: expression
+    static final int VAR = 11;       // a: initializer or -1, c: name constant
+    static final int BLOCK = 12;     // a: offset in lists, b: number of statements
+    static final int IF = 13;        // a: condition, b: then branch, c: else branch or -1
+    static final int WHILE = 14;     // a: condition, b: body
+
+    int[] op = new int[256];
+    int[] a = new int[256];
+    int[] b = new int[256];
+    int[] c = new int[256];
+    int[] first = new int[256]; // first node of the subtree
+    int[] line = new int[256];
+    int size = 0;
+
+    Object[] constants = new Object[64];
+    int constantCount = 0;
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    int[] lists = new int[64];
+    int listSize = 0;
+
+    // the top-level statements
+    int[] program;
+
+    private Arena() {}
+
+    /**
+     * Flatten a program.
+     * @return the arena, or null if the program uses something
+     *         the arena cannot represent
+     */
+    static Arena compile(List<Stmt> statements) {
+        Arena arena = new Arena();
+        try {
+            arena.program = new int[statements.size()];
+            for (int i = 0; i < statements.size(); i++)
+                arena.program[i] = arena.statement(statements.get(i));
+        } catch (UnsupportedOperationException | StackOverflowError e) {
+            return null;
+        }
+        return arena;
+    }
+
+    // ====================================================
+    // statements (nested statements are compiled recursively)
+
+    private int statement(Stmt stmt) {
+        switch (stmt.kind) {
+            case Stmt.EXPRESSION -> {
+                int expression = expression(((Stmt.Expression) stmt).expression, stmt.line);
+                return emit(EXPRESSION, expression, -1, -1, first[expression], stmt.line);
+            }
+            case Stmt.PRINT -> {
+                int expression = expression(((Stmt.Print) stmt).expression, stmt.line);
+                return emit(PRINT, expression, -1, -1, first[expression], stmt.line);
+            }
+            case Stmt.VAR -> {
+                Stmt.Var var = (Stmt.Var) stmt;
+                int start = size;
+                int initializer = var.initializer == null ? -1 : expression(var.initializer, stmt.line);
+                return emit(VAR, initializer, -1, constant(var.name.lexeme), start, stmt.line);
+            }
+            case Stmt.BLOCK -> {
+                List<Stmt> body = ((Stmt.Block) stmt).statements;
+                int start = size;
+                int[] children = new int[body.size()];
+                for (int i = 0; i < children.length; i++)
+                    children[i] = statement(body.get(i));
+
+                int offset = listSize;
+                if (listSize + children.length > lists.length)
+                    lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listSize + children.length));
+                System.arraycopy(children, 0, lists, offset, children.length);
+                listSize += children.length;
+                return emit(BLOCK, offset, children.length, -1, start, stmt.line);
+            }
+            case Stmt.IF -> {
+                Stmt.If ifStmt = (Stmt.If) stmt;
+                int start = size;
+                int condition = expression(ifStmt.condition, stmt.line);
+                int thenBranch = statement(ifStmt.thenBranch);
+                int elseBranch = ifStmt.elseBranch == null ? -1 : statement(ifStmt.elseBranch);
+                return emit(IF, condition, thenBranch, elseBranch, start, stmt.line);
+            }
+            case Stmt.WHILE -> {
+                Stmt.While whileStmt = (Stmt.While) stmt;
+                int start = size;
+                int condition = expression(whileStmt.condition, stmt.line);
+                int body = statement(whileStmt.body);
+                return emit(WHILE, condition, body, -1, start, stmt.line);
+            }
+            default -> throw new UnsupportedOperationException();
+        }
+    }
+
+    // ====================================================
+    // expressions (compiled without recursion)
+
+    // work item: emit the node of an expression whose operands are done
+    private static class Finish {
+        final Expr expr;
+        final int first;
+
+        Finish(Expr expr, int first) {
+            this.expr = expr;
+            this.first = first;
+        }
+    }
+
+    // work item: emit the short-circuit test of a logical expression
+    private static class Test {
+        final Expr.Logical expr;
+
+        Test(Expr.Logical expr) {
+            this.expr = expr;
+        }
+    }
+
+    private int expression(Expr root, int statementLine) {
+        // post-order walk with explicit stacks, so that long
+        // chains compile like Interpreter.evaluateChain runs them
+        List<Object> work = new ArrayList<>();
+        int[] results = new int[16];
+        int resultTop = 0;
+        int[] tests = new int[16];
+        int testTop = 0;
+
+        work.add(root);
+        while (!work.isEmpty()) {
+            Object item = work.remove(work.size() - 1);
+            int node;
+
+            if (item instanceof Finish) {
+                Finish finish = (Finish) item;
+                switch (finish.expr.kind) {
+                    case Expr.ASSIGN -> {
+                        Expr.Assign assign = (Expr.Assign) finish.expr;
+                        node = emit(ASSIGN, results[--resultTop], -1,
+                                constant(assign.name.lexeme), finish.first, assign.name.line);
+                    }
+                    case Expr.UPDATE -> {
+                        Expr.Update update = (Expr.Update) finish.expr;
+                        int flags = (update.postfix ? 1 : 0) | (Interpreter.isIncrement(update.operator) ? 2 : 0);
+                        node = emit(UPDATE, results[--resultTop], flags,
+                                update.operator.type.ordinal(), finish.first, update.name.line);
+                    }
+                    case Expr.UNARY -> {
+                        Expr.Unary unary = (Expr.Unary) finish.expr;
+                        node = emit(UNARY, results[--resultTop], -1,
+                                unary.operator.type.ordinal(), finish.first, unary.operator.line);
+                    }
+                    case Expr.BINARY -> {
+                        Expr.Binary binary = (Expr.Binary) finish.expr;
+                        int right = results[--resultTop];
+                        int left = results[--resultTop];
+                        node = emit(BINARY, left, right,
+                                binary.operator.type.ordinal(), finish.first, binary.operator.line);
+                    }
+                    default -> {
+                        Expr.Logical logical = (Expr.Logical) finish.expr;
+                        int right = results[--resultTop];
+                        int left = results[--resultTop];
+                        node = emit(LOGICAL, left, right,
+                                logical.operator.type.ordinal(), finish.first, logical.operator.line);
+                        // a true (or) / false (and) left operand jumps here
+                        b[tests[--testTop]] = node;
+                    }
+                }
+            } else if (item instanceof Test) {
+                Expr.Logical logical = ((Test) item).expr;
+                int test = emit(TEST, results[resultTop - 1], -1,
+                        logical.operator.type.ordinal(), size, logical.operator.line);
+                if (testTop == tests.length) tests = Arrays.copyOf(tests, testTop * 2);
+                tests[testTop++] = test;
+                continue;
+            } else {
+                Expr expr = (Expr) item;
+                int start = size;
+                switch (expr.kind) {
+                    case Expr.LITERAL -> node = emit(LITERAL, -1, -1,
+                            constant(((Expr.Literal) expr).value), start, statementLine);
+                    case Expr.VARIABLE -> {
+                        Token name = ((Expr.Variable) expr).name;
+                        node = emit(VARIABLE, -1, -1, constant(name.lexeme), start, name.line);
+                    }
+                    case Expr.GROUPING -> {
+                        work.add(((Expr.Grouping) expr).expression);
+                        continue;
+                    }
+                    case Expr.ASSIGN -> {
+                        work.add(new Finish(expr, start));
+                        work.add(((Expr.Assign) expr).value);
+                        continue;
+                    }
+                    case Expr.UPDATE -> {
+                        // the first node of the subtree, not an operand
+                        Token name = ((Expr.Update) expr).name;
+                        emit(LOCATE, -1, -1, constant(name.lexeme), start, name.line);
+                        work.add(new Finish(expr, start));
+                        work.add(((Expr.Update) expr).value);
+                        continue;
+                    }
+                    case Expr.UNARY -> {
+                        work.add(new Finish(expr, start));
+                        work.add(((Expr.Unary) expr).right);
+                        continue;
+                    }
+                    case Expr.BINARY -> {
+                        work.add(new Finish(expr, start));
+                        work.add(((Expr.Binary) expr).right);
+                        work.add(((Expr.Binary) expr).left);
+                        continue;
+                    }
+                    case Expr.LOGICAL -> {
+                        Expr.Logical logical = (Expr.Logical) expr;
+                        work.add(new Finish(expr, start));
+                        work.add(logical.right);
+                        work.add(new Test(logical));
+                        work.add(logical.left);
+                        continue;
+                    }
+                    default -> throw new UnsupportedOperationException();
+                }
+            }
+
+            if (resultTop == results.length) results = Arrays.copyOf(results, resultTop * 2);
+            results[resultTop++] = node;
+        }
+
+        return results[0];
+    }
+
+    // ====================================================
+    // helpers
+
+    private int emit(int opcode, int a, int b, int c, int first, int line) {
+        if (size == op.length) {
+            int capacity = size * 2;
+            op = Arrays.copyOf(op, capacity);
+            this.a = Arrays.copyOf(this.a, capacity);
+            this.b = Arrays.copyOf(this.b, capacity);
+            this.c = Arrays.copyOf(this.c, capacity);
+            this.first = Arrays.copyOf(this.first, capacity);
+            this.line = Arrays.copyOf(this.line, capacity);
+        }
+
+        op[size] = opcode;
+        this.a[size] = a;
+        this.b[size] = b;
+        this.c[size] = c;
+        this.first[size] = first;
+        this.line[size] = line;
+        return size++;
+    }
+
+    private int constant(Object value) {
+        // equal constants share a slot of the pool
+        Integer index = constantIndex.get(value);
+        if (index != null) return index;
+
+        if (constantCount == constants.length)
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        constants[constantCount] = value;
+        constantIndex.put(value, constantCount);
+        return constantCount++;
+    }
+}
@@ -0,0 +1,162 @@
+package com.arotte.aroi;
+
+import java.util.Arrays;
+
+/**ArenaInterpreter.java
+ *
+ * Runs a program in its Arena form.
+ *
+ * An expression is evaluated by one forward scan over its
+ * contiguous range of nodes, with the operands on an array
+ * stack, so the hot loop reads neighbouring ints instead of
+ * chasing pointers between nodes. Statements are executed
+ * by node index.
+ *
+ * The operators themselves, the budget and the output are
+ * shared with the Interpreter that owns this run, so both
+ * forms of a program behave identically.
+ */
+final class ArenaInterpreter {
+    // one shared token per operator, only used for the type;
+    // errors are rethrown with a token on the right line
+    private static final Token[] OPERATORS = new Token[TokenType.values().length];
+
+    static {
+        for (TokenType type : TokenType.values())
+            OPERATORS[type.ordinal()] = new Token(type, "", null, 0);
+    }
+
+    private final Interpreter interpreter;
+    private final Arena arena;
+    private Environment environment;
+
+    private Object[] stack = new Object[64];
+    private int top = 0;
+
+    ArenaInterpreter(Interpreter interpreter, Arena arena, Environment environment) {
+        this.interpreter = interpreter;
+        this.arena = arena;
+        this.environment = environment;
+    }
+
+    void run() {
+        for (int statement : arena.program)
+            execute(statement);
+    }
+
+    private void execute(int node) {
+        interpreter.countStep();
+
+        switch (arena.op[node]) {
+            case Arena.EXPRESSION -> evaluate(arena.a[node]);
+            case Arena.PRINT -> interpreter.print(evaluate(arena.a[node]), arena.line[node]);
+            case Arena.VAR -> {
+                Object value = arena.a[node] < 0 ? null : evaluate(arena.a[node]);
+                environment.define((String) arena.constants[arena.c[node]], value);
+            }
+            case Arena.BLOCK -> {
+                interpreter.checkpoint(arena.line[node]);
+
+                Environment previous = environment;
+                try {
+                    environment = new Environment(previous);
+                    int end = arena.a[node] + arena.b[node];
+                    for (int i = arena.a[node]; i < end; i++)
+                        execute(arena.lists[i]);
+                } finally {
+                    environment = previous;
+                }
+            }
+            case Arena.IF -> {
+                if (interpreter.isTruthy(evaluate(arena.a[node])))
+                    execute(arena.b[node]);
+                else if (arena.c[node] >= 0)
+                    execute(arena.c[node]);
+            }
+            case Arena.WHILE -> {
+                while (interpreter.isTruthy(evaluate(arena.a[node]))) {
+                    execute(arena.b[node]);
+                    interpreter.checkpoint(arena.line[node]);
+                }
+            }
+        }
+    }
+
+    private Object evaluate(int root) {
+        int[] op = arena.op, b = arena.b, c = arena.c;
+        Object[] constants = arena.constants;
+        int base = top;
+        int i = arena.first[root];
+
+        try {
+            for (; i <= root; i++) {
+                switch (op[i]) {
+                    case Arena.LITERAL -> push(constants[c[i]]);
+                    case Arena.VARIABLE -> {
+                        Object value = environment.lookup((String) constants[c[i]]);
+                        if (value == Environment.UNDEFINED) throw undefined(i);
+                        push(value);
+                    }
+                    case Arena.ASSIGN -> {
+                        // the value stays on the stack as the result
+                        if (!environment.assign((String) constants[c[i]], stack[top - 1]))
+                            throw undefined(i);
+                    }
+                    case Arena.LOCATE -> {
+                        // the cell of the variable, and its value before the update
+                        Binding binding = environment.locate((String) constants[c[i]]);
+                        if (binding == null) throw undefined(i);
+                        push(binding);
+                        push(binding.value);
+                    }
+                    case Arena.UPDATE -> {
+                        Object right = stack[--top];
+                        Object old = stack[--top];
+                        // "++" and "--" only count numbers, see Interpreter.update()
+                        if ((b[i] & 2) != 0 && !(old instanceof Double))
+                            throw new RuntimeError(OPERATORS[c[i]], "Operand must be a number.");
+                        Object value = interpreter.binary(OPERATORS[c[i]], old, right);
+                        ((Binding) stack[top - 1]).value = value;
+                        stack[top - 1] = (b[i] & 1) != 0 ? old : value;
+                        stack[top] = null;
+                    }
+                    case Arena.UNARY ->
+                            stack[top - 1] = interpreter.unary(OPERATORS[c[i]], stack[top - 1]);
+                    case Arena.BINARY -> {
+                        Object right = stack[--top];
+                        stack[top - 1] = interpreter.binary(OPERATORS[c[i]], stack[top - 1], right);
+                    }
+                    case Arena.TEST -> {
+                        // short-circuit: keep the left operand as the result
+                        // and jump to the end of the logical expression
+                        boolean truthy = interpreter.isTruthy(stack[top - 1]);
+                        if (c[i] == TokenType.OR.ordinal() ? truthy : !truthy) i = b[i];
+                        else top--;
+                    }
+                    case Arena.LOGICAL -> {
+                        // the right operand is the result
+                    }
+                }
+            }
+        } catch (RuntimeError e) {
+            top = base;
+            if (e.token != OPERATORS[e.token.type.ordinal()]) throw e;
+            throw new RuntimeError(new Token(e.token.type, "", null, arena.line[i]), e.getMessage());
+        }
+
+        Object value = stack[--top];
+        stack[top] = null;
+        return value;
+    }
+
+    private void push(Object value) {
+        if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+        stack[top++] = value;
+    }
+
+    private RuntimeError undefined(int node) {
+        String name = (String) arena.constants[arena.c[node]];
+        return new RuntimeError(new Token(TokenType.IDENTIFIER, name, null, arena.line[node]),
+                "Undefined variable '" + name + "'.");
+    }
+}
@@ -3,38 +3,198 @@ package com.arotte.aroi;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.SocketAddress;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  *
  */
 public class Aroi {
-    private static final Interpreter interpreter = new Interpreter();
-
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    private static final Reporter reporter = new Reporter(System.err);
+    private static final Interpreter interpreter = new Interpreter(System.out, reporter);
+
+    // --profile-alloc: report the lines that allocate the most
+    private static AllocationProfiler profiler = null;
+
+    // --arena: run scripts on their linearized form
+    private static boolean arena = false;
+
+    // --lazy: parse the bodies of blocks on their first execution
+    private static boolean lazy = false;
+
+    // --pipeline: execute while the rest of the script is being parsed
+    private static boolean pipeline = false;
+
+    // --parallel-parse: parse chunks of top-level statements on all cores
+    private static boolean parallelParse = false;
+
+    private static final String USAGE =
+            "Usage: aroi [--profile-alloc | --arena] [--lazy | --pipeline | --parallel-parse] [script]\n" +
+            "            [--max-steps <n>] [--max-time <ms>] [--max-output <chars>]\n" +
+            "            [--prelude <script> [--snapshot <image>]]\n" +
+            "       aroi --batch <directory|manifest> [--jobs <n>] [--show-output]\n" +
+            "            [--lazy | --pipeline | --parallel-parse]\n" +
+            "       aroi --serve [--port <n> | --socket <path>] [--timeout <ms>]";
+
+    // stack of every thread running a script, recursion that is
+    // not a tail call takes a dozen Java frames per Aroi call
+    static final long STACK_SIZE = 256L << 20;
+
+    public static void main(String[] args) throws Exception {
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            start(args);
+            return null;
+        });
+        new Thread(null, task, "aroi-main", STACK_SIZE).start();
+
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw (Exception) e.getCause();
+        }
+    }
 
-    public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: aroi [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+    private static void start(String[] args) throws IOException {
+        String script = null;
+        String batch = null;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        boolean showOutput = false;
+        boolean serve = false;
+        SocketAddress address = Server.tcp(Server.DEFAULT_PORT);
+        long timeout = 0;
+        long maxSteps = Budget.UNLIMITED;
+        long maxMillis = Budget.UNLIMITED;
+        long maxOutput = Budget.UNLIMITED;
+        String prelude = null;
+        String snapshot = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--profile-alloc")) {
+                profiler = new AllocationProfiler();
+            } else if (arg.equals("--arena")) {
+                arena = true;
+            } else if (arg.equals("--lazy")) {
+                lazy = true;
+            } else if (arg.equals("--pipeline")) {
+                pipeline = true;
+            } else if (arg.equals("--parallel-parse")) {
+                parallelParse = true;
+            } else if (arg.equals("--batch") && i + 1 < args.length) {
+                batch = args[++i];
+            } else if (arg.equals("--jobs") && i + 1 < args.length) {
+                jobs = parseCount(args[++i]);
+            } else if (arg.equals("--show-output")) {
+                showOutput = true;
+            } else if (arg.equals("--serve")) {
+                serve = true;
+            } else if (arg.equals("--port") && i + 1 < args.length) {
+                address = Server.tcp(parseCount(args[++i]));
+            } else if (arg.equals("--socket") && i + 1 < args.length) {
+                address = Server.unix(args[++i]);
+            } else if (arg.equals("--timeout") && i + 1 < args.length) {
+                timeout = parseCount(args[++i]);
+            } else if (arg.equals("--max-steps") && i + 1 < args.length) {
+                maxSteps = parseCount(args[++i]);
+            } else if (arg.equals("--max-time") && i + 1 < args.length) {
+                maxMillis = parseCount(args[++i]);
+            } else if (arg.equals("--max-output") && i + 1 < args.length) {
+                maxOutput = parseCount(args[++i]);
+            } else if (arg.equals("--prelude") && i + 1 < args.length) {
+                prelude = args[++i];
+            } else if (arg.equals("--snapshot") && i + 1 < args.length) {
+                snapshot = args[++i];
+            } else if (arg.startsWith("--") || script != null) {
+                usage();
+            } else {
+                script = arg;
+            }
+        }
+        Budget budget = new Budget(maxSteps, maxMillis, maxOutput);
+        if (budget.isUnlimited()) budget = null;
+        // the arena interpreter does not report to the profiler,
+        // and needs the whole program, like lazy parsing
+        if (arena && profiler != null) usage();
+        if (pipeline && (arena || lazy || parallelParse)) usage();
+        if (parallelParse && lazy) usage();
+        interpreter.setProfiler(profiler);
+        interpreter.setArenaMode(arena);
+        interpreter.setBudget(budget);
+
+        // a snapshot is only valid for the prelude it was made from
+        if (snapshot != null && prelude == null) usage();
+        if ((serve || batch != null) && prelude != null) usage();
+        if (prelude != null) runPrelude(prelude, snapshot);
+
+        if (serve) {
+            if (script != null || batch != null || profiler != null || arena) usage();
+            new Server(address, timeout, budget).serve();
+        } else if (batch != null) {
+            if (script != null || profiler != null || arena) usage();
+            BatchRunner runner = new BatchRunner(jobs, showOutput, budget);
+            int status = runner.run(BatchRunner.collectScripts(Paths.get(batch)), System.out);
+            System.exit(status);
+        } else if (script != null) {
+            runFile(script);
         } else {
             runPrompt();
         }
     }
 
+    private static void usage() {
+        System.out.println(USAGE);
+        System.exit(64);
+    }
+
+    private static int parseCount(String arg) {
+        try {
+            int count = Integer.parseInt(arg);
+            if (count > 0) return count;
+        } catch (NumberFormatException ignored) {}
+
+        usage();
+        return 0; // unreachable
+    }
+
     private static void runFile(String path) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        String source = new String(bytes, Charset.defaultCharset());
+        run(source, reporter, interpreter);
+
+        if (profiler != null) profiler.report(System.err, source);
 
         // indicate an error in the exit code
-        if (hadError) System.out.println(65);
-        if (hadRuntimeError) System.out.println(70);
+        if (reporter.hadError) System.out.println(65);
+        if (reporter.hadRuntimeError) System.out.println(70);
+    }
+
+    private static void runPrelude(String path, String snapshot) throws IOException {
+        String source = new String(Files.readAllBytes(Paths.get(path)), Charset.defaultCharset());
+        byte[] hash = Snapshot.hash(source);
+        Path image = snapshot == null ? null : Paths.get(snapshot);
+
+        // restore the globals of an earlier run of the same prelude
+        if (image != null && Snapshot.restore(image, hash, interpreter.globals())) return;
+
+        run(source, reporter, interpreter);
+        if (reporter.hadError || reporter.hadRuntimeError) {
+            System.out.println(reporter.hadError ? 65 : 70);
+            System.exit(reporter.hadError ? 65 : 70);
+        }
+
+        // eg. functions cannot be snapshot, the prelude just runs every time
+        try {
+            if (image != null) Snapshot.write(image, hash, interpreter.globals());
+        } catch (IOException e) {
+            System.err.println("Cannot write snapshot: " + e.getMessage());
+        }
     }
 
     private static void runPrompt() throws IOException {
@@ -45,48 +205,38 @@ public class Aroi {
             System.out.print(">>> ");
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
-            hadError = false;
+            run(line, reporter, interpreter);
+            reporter.hadError = false;
         }
+
+        // every line of the prompt is line 1, so there is no source to show
+        if (profiler != null) profiler.report(System.err, null);
     }
 
-    private static void run(String source) {
+    static void run(String source, Reporter reporter, Interpreter interpreter) {
+        if (pipeline) {
+            Pipeline.run(source, reporter, interpreter);
+            return;
+        }
+
         // 1., scan tokens from raw source
-        Scanner scanner = new Scanner(source);
+        Scanner scanner = new Scanner(source, reporter);
         List<Token> tokens = scanner.scanTokens();
 
         // 2., parse tokens and construct AST
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
+        List<Stmt> statements;
+        if (parallelParse) {
+            statements = ParallelParser.parse(tokens, reporter);
+        } else {
+            Parser parser = new Parser(tokens, reporter);
+            parser.setLazy(lazy);
+            statements = parser.parse();
+        }
 
         // stop if there was a syntax error
-        if (hadError) return;
+        if (reporter.hadError) return;
 
         // 3., interpret (execute) the AST
         interpreter.interpret(statements);
     }
-
-    static void error(int line, String message) {
-        report(line, "", message);
-    }
-
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
-        }
-    }
-
-    static void runtimeError(RuntimeError error) {
-        System.err.println("[line " + error.token.line + "] Error: " + error.getMessage());
-        hadRuntimeError = true;
-    }
-
-    private static void report(int line, String where,
-                               String message) {
-        System.err.println(
-                "[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
-    }
-}
\ No newline at end of file
+}
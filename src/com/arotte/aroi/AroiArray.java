@@ -0,0 +1,148 @@
+package com.arotte.aroi;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**AroiArray.java
+ *
+ * A growable array. While every element is a number, they are
+ * kept unboxed in a double[], which the bulk operations of
+ * ArrayOps work on; the first store of anything else moves
+ * them to an Object[] for good.
+ *
+ * An array can be shared by tasks, and its elements are read and
+ * written under a lock. An array never shrinks, and grows into
+ * a new double[] or Object[], so the numbers of an array read
+ * under the lock stay good for the size read before them (see
+ * numbers()).
+ */
+final class AroiArray {
+    // the elements while they are all numbers, null after that
+    private double[] numbers;
+    // the elements once one is not a number, null before that
+    private Object[] values;
+    volatile int size;
+
+    // see AroiReader
+    private final ReentrantLock lock = new ReentrantLock();
+
+    AroiArray(double[] numbers, int size) {
+        this.numbers = numbers;
+        this.size = size;
+    }
+
+    AroiArray(Object[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * An array of the given elements, unboxed if they are all numbers.
+     */
+    static AroiArray of(Object[] elements) {
+        double[] numbers = new double[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            if (!(elements[i] instanceof Double)) return new AroiArray(elements, elements.length);
+            numbers[i] = (double) elements[i];
+        }
+        return new AroiArray(numbers, elements.length);
+    }
+
+    Object get(int index) {
+        lock.lock();
+        try {
+            return numbers != null ? (Object) numbers[index] : values[index];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The elements, while they are all numbers, or null. Only the
+     * first size of them are elements, for a size read before.
+     */
+    double[] numbers() {
+        lock.lock();
+        try {
+            return numbers;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void set(int index, Object value) {
+        lock.lock();
+        try {
+            if (numbers != null) {
+                if (value instanceof Double) {
+                    numbers[index] = (double) value;
+                    return;
+                }
+                generalize();
+            }
+            values[index] = value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void add(Object value) {
+        lock.lock();
+        try {
+            int capacity = numbers != null ? numbers.length : values.length;
+            if (size == capacity) {
+                capacity = Math.max(8, capacity * 2);
+                if (numbers != null) numbers = Arrays.copyOf(numbers, capacity);
+                else values = Arrays.copyOf(values, capacity);
+            }
+            // the element is stored before the size grows past it
+            set(size, value);
+            size++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void fill(Object value) {
+        lock.lock();
+        try {
+            if (numbers != null && value instanceof Double) {
+                Arrays.fill(numbers, 0, size, (double) value);
+                return;
+            }
+            if (numbers != null) generalize();
+            Arrays.fill(values, 0, size, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void generalize() {
+        values = new Object[numbers.length];
+        for (int i = 0; i < size; i++) values[i] = numbers[i];
+        numbers = null;
+    }
+
+    @Override
+    public String toString() {
+        // the elements are copied, and printed without holding the
+        // lock, which printing the arrays in them would also take
+        Object[] elements;
+        lock.lock();
+        try {
+            elements = new Object[size];
+            for (int i = 0; i < elements.length; i++) elements[i] = get(i);
+        } finally {
+            lock.unlock();
+        }
+
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < elements.length; i++) {
+            if (i > 0) text.append(", ");
+            // an array holding itself is not printed again
+            Object element = elements[i];
+            text.append(element == this ? "[...]" : Interpreter.stringify(element));
+        }
+        return text.append(']').toString();
+    }
+}
@@ -0,0 +1,103 @@
+package com.arotte.aroi;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**AroiBuilder.java
+ *
+ * A string being built: text appended to it goes at the end of
+ * a growable char[], so building a long string takes time linear
+ * in its length, where adding strings copies the whole string
+ * each time. It prints as its text.
+ *
+ * Whole numbers are written into the buffer digit by digit, other
+ * values are appended as they print. Like arrays, builders can
+ * be shared by tasks, and are appended to under a lock.
+ */
+final class AroiBuilder {
+    // past this, numbers print in scientific notation (see Double.toString)
+    private static final double PLAIN = 1e7;
+
+    private char[] chars = new char[16];
+    private int length = 0;
+
+    // see AroiReader
+    private final ReentrantLock lock = new ReentrantLock();
+
+    int length() {
+        lock.lock();
+        try {
+            return length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void append(Object value) {
+        // a value is printed before the lock is taken, as printing
+        // a builder takes its lock
+        String text = value instanceof Double ? null : Interpreter.stringify(value);
+        lock.lock();
+        try {
+            if (text == null) append((double) value);
+            else append(text);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void append(String text) {
+        int count = text.length();
+        reserve(count);
+        text.getChars(0, count, chars, length);
+        length += count;
+    }
+
+    private void append(double number) {
+        // as Interpreter.stringify() prints it, which "-0" keeps apart
+        if (number != (int) number || Math.abs(number) >= PLAIN
+                || (number == 0 && Double.doubleToRawLongBits(number) != 0)) {
+            String text = Double.toString(number);
+            append(text.endsWith(".0") ? text.substring(0, text.length() - 2) : text);
+            return;
+        }
+
+        int value = (int) number;
+        // at most 7 digits and a sign
+        reserve(8);
+        if (value < 0) {
+            chars[length++] = '-';
+            value = -value;
+        }
+        int end = length + digits(value);
+        for (int i = end - 1; i >= length; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length = end;
+    }
+
+    private static int digits(int value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    private void reserve(int count) {
+        if (length + count > chars.length)
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + count));
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return new String(chars, 0, length);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.arotte.aroi;
+
+/**AroiCallable.java
+ *
+ * A value that can be called, like a function.
+ */
+interface AroiCallable {
+    int arity();
+
+    Object call(Interpreter interpreter, Object[] arguments);
+}
@@ -0,0 +1,86 @@
+package com.arotte.aroi;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**AroiChannel.java
+ *
+ * A bounded queue of values, for tasks to hand values to each
+ * other. A send waits while the channel is full, a receive
+ * while it is empty. Once closed, no more values can be sent,
+ * and receives return nil after the ones in there.
+ *
+ * The waits use a lock rather than synchronized, for a condition
+ * each for senders and receivers, and waits a cancelled run can
+ * interrupt.
+ */
+final class AroiChannel {
+    private final Object[] buffer;
+    // the oldest value, and the number of values
+    private int head = 0;
+    private int count = 0;
+    private boolean closed = false;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    AroiChannel(int capacity) {
+        this.buffer = new Object[capacity];
+    }
+
+    /**
+     * @return false if the channel is closed, and the value was not sent
+     */
+    boolean send(Object value) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == buffer.length && !closed) notFull.await();
+            if (closed) return false;
+
+            buffer[(head + count) % buffer.length] = value;
+            count++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the oldest value, or null once the channel is closed and empty
+     */
+    Object receive() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0 && !closed) notEmpty.await();
+            if (count == 0) return null;
+
+            Object value = buffer[head];
+            buffer[head] = null;
+            head = (head + 1) % buffer.length;
+            count--;
+            notFull.signal();
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            // wakes every task waiting on it
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
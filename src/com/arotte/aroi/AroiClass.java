@@ -0,0 +1,55 @@
+package com.arotte.aroi;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**AroiClass.java
+ *
+ * A class declared by a script. Calling it creates an instance
+ * and runs the "init" method on it, if the class has one.
+ */
+final class AroiClass implements AroiCallable {
+    final String name;
+    final AroiClass superclass;
+    // the shape of new instances, which have no fields yet
+    final Shape root = new Shape(this);
+    private final Map<String, AroiFunction> methods = new HashMap<>();
+    private AroiFunction initializer;
+
+    AroiClass(String name, AroiClass superclass) {
+        this.name = name;
+        this.superclass = superclass;
+        this.initializer = superclass == null ? null : superclass.initializer;
+    }
+
+    // only while the class is declared
+    void addMethod(String name, AroiFunction method) {
+        methods.put(name, method);
+        if (name.equals("init")) initializer = method;
+    }
+
+    AroiFunction findMethod(String name) {
+        for (AroiClass klass = this; klass != null; klass = klass.superclass) {
+            AroiFunction method = klass.methods.get(name);
+            if (method != null) return method;
+        }
+        return null;
+    }
+
+    @Override
+    public int arity() {
+        return initializer == null ? 0 : initializer.arity();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        AroiInstance instance = new AroiInstance(this);
+        if (initializer != null) interpreter.call(initializer, instance, arguments);
+        return instance;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,61 @@
+package com.arotte.aroi;
+
+/**AroiFunction.java
+ *
+ * A function declared by a script, with what it closes over:
+ * the environment it was declared in, for the globals and the
+ * locals of top-level blocks, and the cells of the locals of
+ * enclosing functions it uses (see Resolver).
+ *
+ * The methods of a class, and the functions declared inside
+ * them, also know the class, for "super". A method read from
+ * an instance is bound to it as the receiver, "this".
+ *
+ * A function declared with "memo" has a cache of its results.
+ */
+final class AroiFunction implements AroiCallable {
+    final Stmt.Function declaration;
+    final Environment closure;
+    final Binding[] upvalues;
+    final AroiClass owner;
+    final boolean initializer;
+    final Object receiver;
+    // null if the function is not memoized
+    final MemoCache memo;
+
+    AroiFunction(Stmt.Function declaration, Environment closure, Binding[] upvalues,
+                 AroiClass owner, boolean initializer) {
+        this(declaration, closure, upvalues, owner, initializer, null,
+                declaration.memo > 0 ? new MemoCache(declaration.memo) : null);
+    }
+
+    private AroiFunction(Stmt.Function declaration, Environment closure, Binding[] upvalues,
+                         AroiClass owner, boolean initializer, Object receiver, MemoCache memo) {
+        this.declaration = declaration;
+        this.closure = closure;
+        this.upvalues = upvalues;
+        this.owner = owner;
+        this.initializer = initializer;
+        this.receiver = receiver;
+        this.memo = memo;
+    }
+
+    AroiFunction bind(AroiInstance instance) {
+        return new AroiFunction(declaration, closure, upvalues, owner, initializer, instance, memo);
+    }
+
+    @Override
+    public int arity() {
+        return declaration.params.size();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return interpreter.call(this, receiver, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + declaration.name.lexeme + ">";
+    }
+}
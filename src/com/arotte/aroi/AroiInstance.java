@@ -0,0 +1,53 @@
+package com.arotte.aroi;
+
+import java.util.Arrays;
+
+/**AroiInstance.java
+ *
+ * An instance of a class. Its fields are in an array, in the
+ * slots its Shape gives them, instead of in a map by name.
+ *
+ * An instance can be shared by tasks and parallel loops, and its
+ * fields are written while holding it, so that two threads adding
+ * fields don't both take the same slot. Reads are not locked: the
+ * array is grown before the new shape is published, so the array
+ * read after a shape always has its slots.
+ */
+final class AroiInstance {
+    private static final Object[] NO_FIELDS = new Object[0];
+
+    volatile Shape shape;
+    Object[] fields = NO_FIELDS;
+
+    AroiInstance(AroiClass klass) {
+        this.shape = klass.root;
+    }
+
+    /**
+     * Assign a field, adding it if the instance does not have it,
+     * as the cache of the assignment finds it for the current shape.
+     */
+    synchronized void set(InlineCache cache, String name, Object value) {
+        InlineCache.Entry entry = cache.set(shape, name);
+        if (entry.transition != null) {
+            if (entry.slot >= fields.length)
+                fields = Arrays.copyOf(fields, Math.max(4, fields.length * 2));
+            fields[entry.slot] = value;
+            shape = entry.transition;
+            return;
+        }
+        fields[entry.slot] = value;
+    }
+
+    /**
+     * Assign a field the instance has.
+     */
+    synchronized void set(int slot, Object value) {
+        fields[slot] = value;
+    }
+
+    @Override
+    public String toString() {
+        return shape.owner.name + " instance";
+    }
+}
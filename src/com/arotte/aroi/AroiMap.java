@@ -0,0 +1,327 @@
+package com.arotte.aroi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**AroiMap.java
+ *
+ * A hash map, in open-addressing tables with linear probing
+ * instead of a chain of entry objects per bucket. Number keys
+ * have a table of their own, where they are stored unboxed as
+ * the bits of their double (equal as by Double.equals, like
+ * the == of Aroi). Every other key is stored with its hash, so
+ * that probing compares hashes before calling equals(), and a
+ * resize never hashes a key again; strings also cache their
+ * hash themselves.
+ *
+ * Removing shifts the entries after the removed one back, so
+ * the tables never hold tombstones.
+ *
+ * A map can be shared by tasks, and is read and written under
+ * a lock.
+ */
+final class AroiMap {
+    // returned by get() and remove() for a key that is not in the map
+    static final Object ABSENT = new Object();
+    // stands for a nil value, a null value marks a free slot
+    private static final Object NIL = new Object();
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    // the number keys, as the bits of their double; null until the first one
+    private long[] numberKeys;
+    private Object[] numberValues;
+    private int numberCount;
+
+    // every other key, and its hash; null until the first one
+    private Object[] keys;
+    private int[] hashes;
+    private Object[] values;
+    private int count;
+
+    // see AroiReader
+    private final ReentrantLock lock = new ReentrantLock();
+
+    int size() {
+        lock.lock();
+        try {
+            return numberCount + count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Object get(Object key) {
+        lock.lock();
+        try {
+            return find(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Object find(Object key) {
+        Object value;
+        if (key instanceof Double) {
+            if (numberKeys == null) return ABSENT;
+            value = numberValues[numberSlot(bits(key))];
+        } else {
+            if (keys == null || key == null) return ABSENT;
+            value = values[slot(key, hash(key))];
+        }
+        if (value == null) return ABSENT;
+        return value == NIL ? null : value;
+    }
+
+    /**
+     * Map a key, other than nil, to a value.
+     */
+    void put(Object key, Object value) {
+        lock.lock();
+        try {
+            store(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void store(Object key, Object value) {
+        Object stored = value == null ? NIL : value;
+        if (key instanceof Double) {
+            long bits = bits(key);
+            if (numberKeys == null) {
+                numberKeys = new long[INITIAL_CAPACITY];
+                numberValues = new Object[INITIAL_CAPACITY];
+            }
+            int slot = numberSlot(bits);
+            if (numberValues[slot] == null) {
+                if ((numberCount + 1) * 3 > numberKeys.length * 2) {
+                    resizeNumbers();
+                    slot = numberSlot(bits);
+                }
+                numberKeys[slot] = bits;
+                numberCount++;
+            }
+            numberValues[slot] = stored;
+            return;
+        }
+
+        int hash = hash(key);
+        if (keys == null) {
+            keys = new Object[INITIAL_CAPACITY];
+            hashes = new int[INITIAL_CAPACITY];
+            values = new Object[INITIAL_CAPACITY];
+        }
+        int slot = slot(key, hash);
+        if (keys[slot] == null) {
+            if ((count + 1) * 3 > keys.length * 2) {
+                resize();
+                slot = slot(key, hash);
+            }
+            keys[slot] = key;
+            hashes[slot] = hash;
+            count++;
+        }
+        values[slot] = stored;
+    }
+
+    Object remove(Object key) {
+        lock.lock();
+        try {
+            return delete(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Object delete(Object key) {
+        Object value;
+        if (key instanceof Double) {
+            if (numberKeys == null) return ABSENT;
+            int slot = numberSlot(bits(key));
+            value = numberValues[slot];
+            if (value == null) return ABSENT;
+            removeNumber(slot);
+        } else {
+            if (keys == null || key == null) return ABSENT;
+            int slot = slot(key, hash(key));
+            value = values[slot];
+            if (value == null) return ABSENT;
+            removeOther(slot);
+        }
+        return value == NIL ? null : value;
+    }
+
+    /**
+     * The keys, numbers first, in the order of the tables.
+     */
+    List<Object> keys() {
+        lock.lock();
+        try {
+            List<Object> result = new ArrayList<>(size());
+            if (numberKeys != null) {
+                for (int i = 0; i < numberKeys.length; i++)
+                    if (numberValues[i] != null) result.add(Double.longBitsToDouble(numberKeys[i]));
+            }
+            if (keys != null) {
+                for (Object key : keys)
+                    if (key != null) result.add(key);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The values, in the order of keys().
+     */
+    List<Object> values() {
+        lock.lock();
+        try {
+            List<Object> result = new ArrayList<>(size());
+            if (numberValues != null) {
+                for (Object value : numberValues)
+                    if (value != null) result.add(value == NIL ? null : value);
+            }
+            if (values != null) {
+                for (Object value : values)
+                    if (value != null) result.add(value == NIL ? null : value);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // =====================================================
+    // number table
+
+    private static long bits(Object key) {
+        return Double.doubleToLongBits((double) key);
+    }
+
+    private static int numberHash(long bits) {
+        // the bits of small integers differ in the high bits
+        // only, mix them all into the low ones the mask keeps
+        long h = bits * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // the slot of a key, or the free slot where it would go
+    private int numberSlot(long bits) {
+        int mask = numberKeys.length - 1;
+        int i = numberHash(bits) & mask;
+        while (numberValues[i] != null && numberKeys[i] != bits) i = (i + 1) & mask;
+        return i;
+    }
+
+    private void resizeNumbers() {
+        long[] oldKeys = numberKeys;
+        Object[] oldValues = numberValues;
+        numberKeys = new long[oldKeys.length * 2];
+        numberValues = new Object[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == null) continue;
+            int slot = numberSlot(oldKeys[i]);
+            numberKeys[slot] = oldKeys[i];
+            numberValues[slot] = oldValues[i];
+        }
+    }
+
+    private void removeNumber(int gap) {
+        int mask = numberKeys.length - 1;
+        for (int i = (gap + 1) & mask; numberValues[i] != null; i = (i + 1) & mask) {
+            // an entry can fill the gap unless its home slot is after the gap
+            int home = numberHash(numberKeys[i]) & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                numberKeys[gap] = numberKeys[i];
+                numberValues[gap] = numberValues[i];
+                gap = i;
+            }
+        }
+        numberValues[gap] = null;
+        numberCount--;
+    }
+
+    // =====================================================
+    // table of the other keys
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    // the slot of a key, or the free slot where it would go
+    private int slot(Object key, int hash) {
+        int mask = keys.length - 1;
+        int i = hash & mask;
+        for (Object other; (other = keys[i]) != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && (other == key || other.equals(key))) return i;
+        }
+        return i;
+    }
+
+    private void resize() {
+        Object[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        Object[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        hashes = new int[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) continue;
+            // the keys are distinct, only a free slot is needed
+            int slot = oldHashes[i] & mask;
+            while (keys[slot] != null) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            hashes[slot] = oldHashes[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private void removeOther(int gap) {
+        int mask = keys.length - 1;
+        for (int i = (gap + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = hashes[i] & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                hashes[gap] = hashes[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = null;
+        values[gap] = null;
+        count--;
+    }
+
+    @Override
+    public String toString() {
+        // the entries are copied, and printed without holding the
+        // lock, which printing the maps in them would also take
+        List<Object> keys;
+        List<Object> values;
+        lock.lock();
+        try {
+            keys = keys();
+            values = values();
+        } finally {
+            lock.unlock();
+        }
+        if (keys.isEmpty()) return "[:]";
+
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0) text.append(", ");
+            // a map holding itself is not printed again
+            Object value = values.get(i);
+            text.append(Interpreter.stringify(keys.get(i))).append(": ")
+                .append(value == this ? "[...]" : Interpreter.stringify(value));
+        }
+        return text.append(']').toString();
+    }
+}
@@ -0,0 +1,136 @@
+package com.arotte.aroi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**AroiReader.java
+ *
+ * A file open for reading, one line at a time, in UTF-8. Only
+ * a window of the file is in memory at once, plus the line being
+ * read, so a file of any size is read in constant memory.
+ *
+ * The window is either a buffer that the file channel reads into,
+ * or (mapped) a part of the file mapped into memory, which saves
+ * copying the bytes from the kernel for big files. Lines are
+ * split on the bytes of the window, as '\n' is never a part of
+ * another character in UTF-8, and only the line is decoded.
+ */
+final class AroiReader implements Closeable {
+    private static final int BUFFER = 1 << 16;
+    private static final long WINDOW = 1 << 28;
+
+    private final FileChannel channel;
+    private final boolean mapped;
+    // the window, and the offset in the file of the next one
+    private ByteBuffer window;
+    private long next = 0;
+    // the bytes of the line being read, across windows
+    private byte[] line = new byte[256];
+    private boolean closed = false;
+
+    // a file can be shared by tasks, and is read under this lock
+    private final ReentrantLock lock = new ReentrantLock();
+
+    AroiReader(Path path, boolean mapped) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.mapped = mapped;
+        if (mapped) {
+            this.window = ByteBuffer.allocate(0);
+        } else {
+            this.window = ByteBuffer.allocate(BUFFER);
+            this.window.flip();
+        }
+    }
+
+    /**
+     * @return the next line, without its "\n" or "\r\n", or null at the end of the file
+     * @throws ClosedChannelException if the reader is closed
+     */
+    String readLine() throws IOException {
+        lock.lock();
+        try {
+            if (closed) throw new ClosedChannelException();
+
+            int length = 0;
+            boolean read = false;
+            for (;;) {
+                ByteBuffer window = this.window;
+                int start = window.position();
+                int limit = window.limit();
+                for (int i = start; i < limit; i++) {
+                    if (window.get(i) == '\n') {
+                        length = append(length, start, i);
+                        window.position(i + 1);
+                        return decode(length);
+                    }
+                }
+
+                // the line goes on in the next window, if there is one
+                length = append(length, start, limit);
+                read |= limit > start;
+                window.position(limit);
+                if (!advance()) return read ? decode(length) : null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int append(int length, int from, int to) {
+        int count = to - from;
+        if (length + count > line.length)
+            line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+        window.get(from, line, length, count);
+        return length + count;
+    }
+
+    private String decode(int length) {
+        if (length > 0 && line[length - 1] == '\r') length--;
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private boolean advance() throws IOException {
+        // the next window, false at the end of the file
+        if (mapped) {
+            long size = channel.size();
+            if (next >= size) return false;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, next, Math.min(WINDOW, size - next));
+            next += window.limit();
+            return true;
+        }
+
+        window.clear();
+        int count;
+        do {
+            count = channel.read(window);
+        } while (count == 0);
+        window.flip();
+        return count > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            // a mapped window is unmapped once it is collected
+            window = ByteBuffer.allocate(0);
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<reader>";
+    }
+}
@@ -0,0 +1,60 @@
+package com.arotte.aroi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**AroiWriter.java
+ *
+ * A file open for writing, in UTF-8. What is written is buffered,
+ * and only sure to be in the file once the writer is closed, by
+ * the program or at the end of its run.
+ */
+final class AroiWriter implements Closeable {
+    private final Writer writer;
+    private boolean closed = false;
+
+    // see AroiReader
+    private final ReentrantLock lock = new ReentrantLock();
+
+    AroiWriter(Path path, boolean append) throws IOException {
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * @return false if the writer is closed, and the text was not written
+     */
+    boolean write(String text) throws IOException {
+        lock.lock();
+        try {
+            if (closed) return false;
+            writer.write(text);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            writer.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<writer>";
+    }
+}
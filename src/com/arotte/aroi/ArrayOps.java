@@ -0,0 +1,47 @@
+package com.arotte.aroi;
+
+/**ArrayOps.java
+ *
+ * Bulk operations on the numbers of arrays, behind the array
+ * builtins. These loops are scalar; SimdArrayOps (in simd/,
+ * built only where the JDK has the incubating Vector API)
+ * overrides them with SIMD ones, and is used whenever it was
+ * built and the JVM was started with
+ * --add-modules jdk.incubator.vector.
+ *
+ * Filling is left to Arrays.fill, which the JIT compiles to
+ * vector stores anyway. The SIMD sums add the lanes in a
+ * different order, so their last bits may differ from the
+ * scalar ones.
+ */
+class ArrayOps {
+    static final ArrayOps INSTANCE = load();
+
+    double sum(double[] a, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) sum += a[i];
+        return sum;
+    }
+
+    double dot(double[] a, double[] b, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) sum += a[i] * b[i];
+        return sum;
+    }
+
+    // result[i] = a[i] * factor + addend
+    void scale(double[] a, double factor, double addend, double[] result, int length) {
+        for (int i = 0; i < length; i++) result[i] = a[i] * factor + addend;
+    }
+
+    private static ArrayOps load() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return new ArrayOps();
+        try {
+            return (ArrayOps) Class.forName("com.arotte.aroi.SimdArrayOps")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // not built
+            return new ArrayOps();
+        }
+    }
+}
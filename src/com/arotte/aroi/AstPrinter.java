@@ -53,6 +53,75 @@ public class AstPrinter implements Expr.Visitor<String> {
         );
     }
 
+    @Override
+    public String visitCallExpr(Expr.Call expr) {
+        Expr[] exprs = new Expr[expr.arguments.size() + 1];
+        exprs[0] = expr.callee;
+        for (int i = 1; i < exprs.length; i++)
+            exprs[i] = expr.arguments.get(i - 1);
+        return parenthesize("call", exprs);
+    }
+
+    @Override
+    public String visitGetExpr(Expr.Get expr) {
+        return parenthesize("." + expr.name.lexeme, expr.object);
+    }
+
+    @Override
+    public String visitSetExpr(Expr.Set expr) {
+        return parenthesize("=." + expr.name.lexeme, expr.object, expr.value);
+    }
+
+    @Override
+    public String visitUpdateExpr(Expr.Update expr) {
+        return parenthesize(update(expr.operator, expr.postfix) + " " + expr.name.lexeme, expr.value);
+    }
+
+    @Override
+    public String visitUpdateFieldExpr(Expr.UpdateField expr) {
+        return parenthesize(update(expr.operator, expr.postfix) + "." + expr.name.lexeme, expr.object, expr.value);
+    }
+
+    @Override
+    public String visitArrayExpr(Expr.Array expr) {
+        return parenthesize("array", expr.elements.toArray(new Expr[0]));
+    }
+
+    @Override
+    public String visitMapExpr(Expr.Map expr) {
+        Expr[] exprs = new Expr[expr.keys.size() * 2];
+        for (int i = 0; i < expr.keys.size(); i++) {
+            exprs[2 * i] = expr.keys.get(i);
+            exprs[2 * i + 1] = expr.values.get(i);
+        }
+        return parenthesize("map", exprs);
+    }
+
+    @Override
+    public String visitIndexExpr(Expr.Index expr) {
+        return parenthesize("[]", expr.object, expr.index);
+    }
+
+    @Override
+    public String visitIndexSetExpr(Expr.IndexSet expr) {
+        return parenthesize("=[]", expr.object, expr.index, expr.value);
+    }
+
+    @Override
+    public String visitUpdateIndexExpr(Expr.UpdateIndex expr) {
+        return parenthesize(update(expr.operator, expr.postfix) + "[]", expr.object, expr.index, expr.value);
+    }
+
+    private static String update(Token operator, boolean postfix) {
+        // eg. "+=", "++" and "post++"
+        return postfix ? "post" + operator.lexeme : operator.lexeme;
+    }
+
+    @Override
+    public String visitSuperExpr(Expr.Super expr) {
+        return "(super " + expr.method.lexeme + ")";
+    }
+
     @Override
     public String visitVariableExpr(Expr.Variable expr) {
         return expr.name.lexeme;
@@ -0,0 +1,171 @@
+package com.arotte.aroi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**BatchRunner.java
+ *
+ * Runs many scripts in one JVM, concurrently on a bounded
+ * pool of threads.
+ *
+ * Every script gets its own interpreter, global environment
+ * and reporter, and its output is captured instead of being
+ * printed, so scripts cannot observe each other. The results
+ * are reported in the order the scripts were given.
+ */
+class BatchRunner {
+    private final int jobs;
+    private final boolean showOutput;
+    private final Budget budget;
+
+    /**
+     * @param budget limits of every script, or null
+     */
+    BatchRunner(int jobs, boolean showOutput, Budget budget) {
+        this.jobs = jobs;
+        this.showOutput = showOutput;
+        this.budget = budget;
+    }
+
+    static class Result {
+        final Path script;
+        final int exitCode; // 0, 65 (syntax error), 70 (runtime error) or 74 (i/o error)
+        final long nanos;
+        final String output;
+        final String diagnostics;
+
+        Result(Path script, int exitCode, long nanos, String output, String diagnostics) {
+            this.script = script;
+            this.exitCode = exitCode;
+            this.nanos = nanos;
+            this.output = output;
+            this.diagnostics = diagnostics;
+        }
+    }
+
+    /**
+     * Find the scripts to run.
+     * @param target a directory, searched recursively for '.ar' files,
+     *               or a manifest listing one script path per line
+     */
+    static List<Path> collectScripts(Path target) throws IOException {
+        if (Files.isDirectory(target)) {
+            try (Stream<Path> files = Files.walk(target)) {
+                return files.filter(path -> path.toString().endsWith(".ar"))
+                            .filter(Files::isRegularFile)
+                            .sorted()
+                            .collect(Collectors.toList());
+            }
+        }
+
+        // manifest: blank lines and '#' comments are skipped,
+        // relative paths are relative to the manifest itself
+        Path base = target.toAbsolutePath().getParent();
+        List<Path> scripts = new ArrayList<>();
+        for (String line : Files.readAllLines(target)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            scripts.add(base.resolve(line));
+        }
+        return scripts;
+    }
+
+    /**
+     * Run the scripts and print a report.
+     * @return the exit code of the batch: 70 if any script had a runtime
+     *         error, otherwise the highest exit code of the scripts
+     */
+    int run(List<Path> scripts, PrintStream out) {
+        ExecutorService pool = Executors.newFixedThreadPool(jobs,
+                job -> new Thread(null, job, "aroi-batch", Aroi.STACK_SIZE));
+        long start = System.nanoTime();
+        int status = 0;
+        int failed = 0;
+
+        try {
+            List<Future<Result>> results = new ArrayList<>();
+            for (Path script : scripts)
+                results.add(pool.submit(() -> runScript(script)));
+
+            // report in order, as soon as each result is available
+            for (Future<Result> future : results) {
+                Result result = future.get();
+                print(result, out);
+
+                if (result.exitCode != 0) failed++;
+                if (result.exitCode == 70 || status == 70) status = 70;
+                else status = Math.max(status, result.exitCode);
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Batch run failed.", e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        out.println(String.format("%d scripts, %d failed, %.3f s wall time, %.1f scripts/s (%d jobs)",
+                scripts.size(), failed, seconds, scripts.size() / seconds, jobs));
+        return status;
+    }
+
+    private Result runScript(Path script) {
+        long start = System.nanoTime();
+        Charset charset = Charset.defaultCharset();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        PrintStream err = new PrintStream(diagnostics, true, charset);
+
+        int exitCode;
+        try {
+            String source = new String(Files.readAllBytes(script), charset);
+            Reporter reporter = new Reporter(err);
+            Interpreter interpreter = new Interpreter(new PrintStream(output, true, charset), reporter);
+            interpreter.setBudget(budget);
+            Aroi.run(source, reporter, interpreter);
+
+            if (reporter.hadError) exitCode = 65;
+            else if (reporter.hadRuntimeError) exitCode = 70;
+            else exitCode = 0;
+        } catch (IOException e) {
+            err.println("Cannot read script: " + e.getMessage());
+            exitCode = 74;
+        } catch (StackOverflowError e) {
+            err.println("Stack overflow.");
+            exitCode = 70;
+        } catch (RuntimeException e) {
+            // a bug of the interpreter, which fails this script only
+            err.println("Internal error: " + e);
+            exitCode = 70;
+        }
+
+        return new Result(script, exitCode, System.nanoTime() - start,
+                output.toString(charset), diagnostics.toString(charset));
+    }
+
+    private void print(Result result, PrintStream out) {
+        out.println(String.format("%-4s %3d %10.3f ms  %s",
+                result.exitCode == 0 ? "OK" : "FAIL",
+                result.exitCode, result.nanos / 1e6, result.script));
+
+        if (showOutput) indent(result.output, out);
+        indent(result.diagnostics, out);
+    }
+
+    private static void indent(String text, PrintStream out) {
+        if (text.isEmpty()) return;
+        for (String line : text.split("\\R"))
+            out.println("    | " + line);
+    }
+}
@@ -0,0 +1,20 @@
+package com.arotte.aroi;
+
+/**Binding.java
+ *
+ * The cell that holds the value of a variable.
+ *
+ * An environment keeps the same cell for a name for as long
+ * as it exists, even if the name is declared again, so a
+ * variable node can keep the cell it found and read or
+ * write it later without looking the name up.
+ */
+final class Binding {
+    final Environment owner;
+    Object value;
+
+    Binding(Environment owner, Object value) {
+        this.owner = owner;
+        this.value = value;
+    }
+}
@@ -0,0 +1,40 @@
+package com.arotte.aroi;
+
+/**Budget.java
+ *
+ * Limits on how much work a single run may do, so that
+ * untrusted scripts can share one JVM.
+ *
+ * The interpreter counts executed statements with a plain
+ * counter, and only compares it against the budget at loop
+ * back-edges and block entries. Clock reads and interrupt
+ * checks happen once every CHECK_INTERVAL statements, and
+ * never if the interpreter has no budget at all.
+ */
+class Budget {
+    static final long UNLIMITED = 0;
+
+    // statements executed between two clock/interrupt checks
+    static final long CHECK_INTERVAL = 4096;
+
+    final long maxSteps;
+    final long maxMillis;
+    final long maxOutput;
+
+    /**
+     * @param maxSteps number of statements a run may execute
+     * @param maxMillis wall-clock time a run may take
+     * @param maxOutput characters a run may print, including newlines
+     *
+     * Any of them can be UNLIMITED.
+     */
+    Budget(long maxSteps, long maxMillis, long maxOutput) {
+        this.maxSteps = maxSteps;
+        this.maxMillis = maxMillis;
+        this.maxOutput = maxOutput;
+    }
+
+    boolean isUnlimited() {
+        return maxSteps == UNLIMITED && maxMillis == UNLIMITED && maxOutput == UNLIMITED;
+    }
+}
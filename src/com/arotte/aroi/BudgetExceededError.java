@@ -0,0 +1,16 @@
+package com.arotte.aroi;
+
+/**BudgetExceededError.java
+ *
+ * Thrown when a run uses up one of the limits of its Budget.
+ * Unlike a RuntimeError it has no token, only the line of
+ * the statement where the budget was checked.
+ */
+public class BudgetExceededError extends RuntimeException {
+    final int line;
+
+    public BudgetExceededError(int line, String message) {
+        super(message);
+        this.line = line;
+    }
+}
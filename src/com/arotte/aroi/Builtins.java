@@ -0,0 +1,319 @@
+package com.arotte.aroi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Pattern;
+
+/**Builtins.java
+ *
+ * The native functions every program starts with, defined as
+ * globals of each interpreter. Those taking a map read missing
+ * keys without an error, which indexing reports.
+ */
+final class Builtins {
+    // a number literal, with a sign
+    private static final Pattern NUMBER = Pattern.compile("-?[0-9]+(\\.[0-9]+)?");
+
+    private Builtins() {}
+
+    /**
+     * @param files where the files a program opens are kept until
+     *              it closes them, to be closed at the end of its run
+     */
+    static void define(Environment globals, Set<Closeable> files) {
+        // arrays
+        define(globals, "array", (length, value) -> {
+            int size = size(length);
+            AroiArray array = new AroiArray(new double[size], size);
+            array.fill(value);
+            return array;
+        });
+        define(globals, "len", value -> {
+            if (value instanceof String) return (double) ((String) value).length();
+            if (value instanceof AroiBuilder) return (double) ((AroiBuilder) value).length();
+            if (value instanceof AroiMap) return (double) ((AroiMap) value).size();
+            return (double) array(value).size;
+        });
+        define(globals, "push", (a, value) -> {
+            array(a).add(value);
+            return null;
+        });
+        define(globals, "fill", (a, value) -> {
+            array(a).fill(value);
+            return null;
+        });
+        define(globals, "sum", value -> {
+            int size = array(value).size;
+            return ArrayOps.INSTANCE.sum(numbers(value), size);
+        });
+        define(globals, "dot", (left, right) -> {
+            int size = array(left).size;
+            if (size != array(right).size) throw NativeFunction.error("Arrays must have the same length.");
+            return ArrayOps.INSTANCE.dot(numbers(left), numbers(right), size);
+        });
+        define(globals, "scale", (a, factor) -> map(a, number(factor), 0));
+        define(globals, "offset", (a, addend) -> map(a, 1, number(addend)));
+
+        // maps
+        define(globals, "has", (m, key) -> map(m).get(key) != AroiMap.ABSENT);
+        define(globals, "get", (m, key, otherwise) -> {
+            Object value = map(m).get(key);
+            return value == AroiMap.ABSENT ? otherwise : value;
+        });
+        define(globals, "remove", (m, key) -> {
+            Object value = map(m).remove(key);
+            return value == AroiMap.ABSENT ? null : value;
+        });
+        define(globals, "keys", m -> AroiArray.of(map(m).keys().toArray()));
+        define(globals, "values", m -> AroiArray.of(map(m).values().toArray()));
+
+        // channels, which wait by blocking the task
+        define(globals, "channel", capacity -> {
+            int size = size(capacity);
+            if (size == 0) throw NativeFunction.error("Capacity must be a positive integer.");
+            return new AroiChannel(size);
+        });
+        define(globals, "send", (ch, value) -> {
+            AroiChannel channel = channel(ch);
+            // nil is what a receive returns once the channel is closed
+            if (value == null) throw NativeFunction.error("Can't send nil on a channel.");
+            try {
+                if (!channel.send(value)) throw NativeFunction.error("Can't send on a closed channel.");
+            } catch (InterruptedException e) {
+                throw new CancellationException("Execution cancelled.");
+            }
+            return null;
+        });
+        define(globals, "receive", ch -> {
+            AroiChannel channel = channel(ch);
+            try {
+                return channel.receive();
+            } catch (InterruptedException e) {
+                throw new CancellationException("Execution cancelled.");
+            }
+        });
+
+        // files, read a line at a time and written through a buffer,
+        // and closed at the end of the run if not before; close() is
+        // shared with channels
+        define(globals, "open", (path, mode) -> {
+            Path file = path(path);
+            try {
+                Closeable opened = switch (string(mode)) {
+                    case "r" -> new AroiReader(file, false);
+                    case "m" -> new AroiReader(file, true);
+                    case "w" -> new AroiWriter(file, false);
+                    case "a" -> new AroiWriter(file, true);
+                    default -> throw NativeFunction.error("Mode must be 'r', 'm', 'w' or 'a'.");
+                };
+                files.add(opened);
+                return opened;
+            } catch (IOException e) {
+                throw failure("Can't open '" + path + "'", e);
+            }
+        });
+        define(globals, "readLine", f -> readLine(f));
+        define(globals, "readRecord", (f, separator) -> {
+            // a line split into its fields, which may be empty
+            String split = Pattern.quote(string(separator));
+            String line = readLine(f);
+            if (line == null) return null;
+            // not a String[], which could not hold the numbers stored later
+            String[] fields = line.split(split, -1);
+            return AroiArray.of(Arrays.copyOf(fields, fields.length, Object[].class));
+        });
+        define(globals, "write", (f, value) -> write(f, Interpreter.stringify(value)));
+        define(globals, "writeLine", (f, value) -> write(f, Interpreter.stringify(value) + "\n"));
+        define(globals, "close", value -> {
+            try {
+                if (value instanceof AroiChannel) {
+                    ((AroiChannel) value).close();
+                } else if (value instanceof AroiReader || value instanceof AroiWriter) {
+                    files.remove(value);
+                    ((Closeable) value).close();
+                } else {
+                    throw NativeFunction.error("Expected a channel or a file.");
+                }
+            } catch (IOException e) {
+                throw failure("Can't close the file", e);
+            }
+            return null;
+        });
+
+        // strings
+        define(globals, "substring", (s, from, to) -> {
+            String text = string(s);
+            int start = position(from, text.length());
+            int end = position(to, text.length());
+            if (start > end) throw NativeFunction.error("Start of a substring can't be after its end.");
+            return text.substring(start, end);
+        });
+        define(globals, "index", (s, part) -> (double) string(s).indexOf(string(part)));
+        define(globals, "string", value -> Interpreter.stringify(value));
+        define(globals, "builder", () -> new AroiBuilder());
+        define(globals, "append", (b, value) -> {
+            // returns the builder, for appends to be chained
+            if (!(b instanceof AroiBuilder)) throw NativeFunction.error("Expected a builder.");
+            ((AroiBuilder) b).append(value);
+            return b;
+        });
+        define(globals, "number", s -> {
+            // the syntax of number literals, with a sign; nil otherwise
+            String text = string(s);
+            return NUMBER.matcher(text).matches() ? Double.parseDouble(text) : null;
+        });
+        define(globals, "format", (x, digits) -> {
+            int places = size(digits);
+            if (places > 20) throw NativeFunction.error("Can't format more than 20 decimal places.");
+            return String.format(Locale.ROOT, "%." + places + "f", number(x));
+        });
+
+        // math
+        define(globals, "abs", x -> Math.abs(number(x)));
+        define(globals, "floor", x -> Math.floor(number(x)));
+        define(globals, "ceil", x -> Math.ceil(number(x)));
+        define(globals, "round", x -> (double) Math.round(number(x)));
+        define(globals, "sqrt", x -> Math.sqrt(number(x)));
+        define(globals, "exp", x -> Math.exp(number(x)));
+        define(globals, "log", x -> Math.log(number(x)));
+        define(globals, "sin", x -> Math.sin(number(x)));
+        define(globals, "cos", x -> Math.cos(number(x)));
+        define(globals, "pow", (x, y) -> Math.pow(number(x), number(y)));
+        define(globals, "min", (x, y) -> Math.min(number(x), number(y)));
+        define(globals, "max", (x, y) -> Math.max(number(x), number(y)));
+
+        // the cache of a memoized function
+        define(globals, "memoStats", f -> {
+            if (f instanceof AroiFunction && ((AroiFunction) f).memo != null)
+                return ((AroiFunction) f).memo.stats();
+            throw NativeFunction.error("Expected a memoized function.");
+        });
+
+        // time, in nanoseconds of an arbitrary origin: only the
+        // difference between two readings means something
+        define(globals, "clock", () -> (double) System.nanoTime());
+    }
+
+    private static void define(Environment globals, String name, NativeFunction.Body0 body) {
+        globals.define(name, new NativeFunction(name, body));
+    }
+
+    private static void define(Environment globals, String name, NativeFunction.Body1 body) {
+        globals.define(name, new NativeFunction(name, body));
+    }
+
+    private static void define(Environment globals, String name, NativeFunction.Body2 body) {
+        globals.define(name, new NativeFunction(name, body));
+    }
+
+    private static void define(Environment globals, String name, NativeFunction.Body3 body) {
+        globals.define(name, new NativeFunction(name, body));
+    }
+
+    // a new array of every number of an array times factor plus addend
+    private static AroiArray map(Object value, double factor, double addend) {
+        int size = array(value).size;
+        double[] result = new double[size];
+        ArrayOps.INSTANCE.scale(numbers(value), factor, addend, result, size);
+        return new AroiArray(result, size);
+    }
+
+    // =====================================================
+    // arguments
+
+    private static AroiArray array(Object value) {
+        if (value instanceof AroiArray) return (AroiArray) value;
+        throw NativeFunction.error("Expected an array.");
+    }
+
+    private static AroiMap map(Object value) {
+        if (value instanceof AroiMap) return (AroiMap) value;
+        throw NativeFunction.error("Expected a map.");
+    }
+
+    private static String string(Object value) {
+        if (value instanceof String) return (String) value;
+        throw NativeFunction.error("Expected a string.");
+    }
+
+    private static int position(Object value, int length) {
+        // an index into a string, or its length for the end
+        double index = number(value);
+        if (index != (int) index) throw NativeFunction.error("String index must be an integer.");
+        if (index < 0 || index > length)
+            throw NativeFunction.error("Index " + (int) index + " out of bounds for string of length " + length + ".");
+        return (int) index;
+    }
+
+    private static String readLine(Object value) {
+        if (!(value instanceof AroiReader)) throw NativeFunction.error("Expected a file open for reading.");
+        try {
+            return ((AroiReader) value).readLine();
+        } catch (ClosedChannelException e) {
+            throw NativeFunction.error("Can't read a closed file.");
+        } catch (IOException e) {
+            throw failure("Can't read the file", e);
+        }
+    }
+
+    private static Object write(Object value, String text) {
+        if (!(value instanceof AroiWriter)) throw NativeFunction.error("Expected a file open for writing.");
+        try {
+            if (!((AroiWriter) value).write(text)) throw NativeFunction.error("Can't write to a closed file.");
+        } catch (IOException e) {
+            throw failure("Can't write the file", e);
+        }
+        return null;
+    }
+
+    private static Path path(Object value) {
+        try {
+            return Paths.get(string(value));
+        } catch (InvalidPathException e) {
+            throw NativeFunction.error("Invalid path '" + value + "'.");
+        }
+    }
+
+    private static RuntimeError failure(String action, IOException e) {
+        // the messages of file system exceptions start with the path
+        if (e instanceof NoSuchFileException) return NativeFunction.error(action + ": no such file.");
+        if (e instanceof AccessDeniedException) return NativeFunction.error(action + ": access denied.");
+        String reason = e instanceof FileSystemException ? ((FileSystemException) e).getReason() : null;
+        if (reason == null) reason = e.getMessage();
+        return NativeFunction.error(action + ": " + reason + ".");
+    }
+
+    private static AroiChannel channel(Object value) {
+        if (value instanceof AroiChannel) return (AroiChannel) value;
+        throw NativeFunction.error("Expected a channel.");
+    }
+
+    // the numbers of an array, good for a size read before (see AroiArray)
+    private static double[] numbers(Object value) {
+        double[] numbers = array(value).numbers();
+        if (numbers == null) throw NativeFunction.error("Expected an array of numbers.");
+        return numbers;
+    }
+
+    private static double number(Object value) {
+        if (value instanceof Double) return (double) value;
+        throw NativeFunction.error("Expected a number.");
+    }
+
+    private static int size(Object value) {
+        double size = number(value);
+        if (size < 0 || size != (int) size) throw NativeFunction.error("Size must be a non-negative integer.");
+        return (int) size;
+    }
+}
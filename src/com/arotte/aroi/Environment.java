@@ -2,23 +2,49 @@ package com.arotte.aroi;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
+/**Environment.java
+ *
+ * The variables of a scope, by name. The globals can be read
+ * and defined by the tasks of spawn statements while the code
+ * that spawned them keeps running, so they are kept in a
+ * concurrent map. The scopes of top-level blocks use a plain
+ * map, which is replaced by a concurrent one once a task is
+ * spawned in there (see share()).
+ */
 class Environment {
+    // returned by lookup() for a variable that is not defined
+    static final Object UNDEFINED = new Object();
+
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    private Map<String, Binding> values;
 
     Environment() {
         this.enclosing = null;
+        this.values = new ConcurrentHashMap<>();
     }
 
     Environment(Environment environment) {
         this.enclosing = environment;
+        this.values = new HashMap<>();
+    }
+
+    void share() {
+        // let this scope and the ones around it be used by another
+        // thread as well, the cells of the variables are kept
+        for (Environment environment = this; environment != null; environment = environment.enclosing) {
+            if (environment.values instanceof ConcurrentHashMap) break;
+            environment.values = new ConcurrentHashMap<>(environment.values);
+        }
     }
 
     Object get(Token name) {
         // return value of variable
-        if (values.containsKey(name.lexeme))
-            return values.get(name.lexeme);
+        Binding binding = values.get(name.lexeme);
+        if (binding != null)
+            return binding.value;
 
         // Recursive step:
         // if variable is not present in current local scope,
@@ -29,14 +55,46 @@ class Environment {
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
+    Object lookup(String name) {
+        // like get(), but by name and without a token for the error
+        for (Environment environment = this; environment != null; environment = environment.enclosing) {
+            Binding binding = environment.values.get(name);
+            if (binding != null) return binding.value;
+        }
+        return UNDEFINED;
+    }
+
+    Binding locate(String name) {
+        // the cell of a variable of this scope or the ones around
+        // it, for reading and writing it; null if it is not defined
+        for (Environment environment = this; environment != null; environment = environment.enclosing) {
+            Binding binding = environment.values.get(name);
+            if (binding != null) return binding;
+        }
+        return null;
+    }
+
+    Binding binding(String name) {
+        // the cell of a variable of this scope, null if it is not defined
+        return values.get(name);
+    }
+
+    void forEach(BiConsumer<String, Object> action) {
+        // every variable of this scope, with its value
+        values.forEach((name, binding) -> action.accept(name, binding.value));
+    }
+
     void define(String name, Object value) {
-        // define a new variable
-        values.put(name, value);
+        // define a new variable, or reuse the cell of a redefined one
+        Binding binding = values.get(name);
+        if (binding != null) binding.value = value;
+        else values.put(name, new Binding(this, value));
     }
 
     void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
+        Binding binding = values.get(name.lexeme);
+        if (binding != null) {
+            binding.value = value;
             return;
         }
 
@@ -49,4 +107,16 @@ class Environment {
 
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
+
+    boolean assign(String name, Object value) {
+        // like assign(), but by name, returns false if the variable is not defined
+        for (Environment environment = this; environment != null; environment = environment.enclosing) {
+            Binding binding = environment.values.get(name);
+            if (binding != null) {
+                binding.value = value;
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -9,7 +9,7 @@ import java.util.List;
  *
  * Generated by com.arotte.tool.GenerateAst.java
  */
-abstract class Expr {
+abstract sealed class Expr {
   interface Visitor<R> {
     R visitAssignExpr(Assign expr);
     R visitLiteralExpr(Literal expr);
@@ -17,15 +17,58 @@ abstract class Expr {
     R visitGroupingExpr(Grouping expr);
     R visitUnaryExpr(Unary expr);
     R visitBinaryExpr(Binary expr);
+    R visitCallExpr(Call expr);
+    R visitGetExpr(Get expr);
+    R visitSetExpr(Set expr);
+    R visitArrayExpr(Array expr);
+    R visitMapExpr(Map expr);
+    R visitIndexExpr(Index expr);
+    R visitIndexSetExpr(IndexSet expr);
+    R visitUpdateExpr(Update expr);
+    R visitUpdateFieldExpr(UpdateField expr);
+    R visitUpdateIndexExpr(UpdateIndex expr);
+    R visitSuperExpr(Super expr);
     R visitVariableExpr(Variable expr);
   }
 
-  static class Assign extends Expr {
+  // kind tags of the AST classes
+  static final int ASSIGN = 0;
+  static final int LITERAL = 1;
+  static final int LOGICAL = 2;
+  static final int GROUPING = 3;
+  static final int UNARY = 4;
+  static final int BINARY = 5;
+  static final int CALL = 6;
+  static final int GET = 7;
+  static final int SET = 8;
+  static final int ARRAY = 9;
+  static final int MAP = 10;
+  static final int INDEX = 11;
+  static final int INDEXSET = 12;
+  static final int UPDATE = 13;
+  static final int UPDATEFIELD = 14;
+  static final int UPDATEINDEX = 15;
+  static final int SUPER = 16;
+  static final int VARIABLE = 17;
+
+  // kind tag of this node
+  final int kind;
+
+  Expr(int kind) {
+    this.kind = kind;
+  }
+
+  static final class Assign extends Expr {
     // fields
     final Token name;
     final Expr value;
+    // filled in after construction
+    int scope;
+    int slot;
+    Binding binding;
     // constructor
     Assign(Token name, Expr value) {
+      super(ASSIGN);
       this.name = name;
       this.value = value;
     }
@@ -36,11 +79,12 @@ abstract class Expr {
     }
   }
 
-  static class Literal extends Expr {
+  static final class Literal extends Expr {
     // fields
     final Object value;
     // constructor
     Literal(Object value) {
+      super(LITERAL);
       this.value = value;
     }
     // visitor pattern
@@ -50,13 +94,14 @@ abstract class Expr {
     }
   }
 
-  static class Logical extends Expr {
+  static final class Logical extends Expr {
     // fields
     final Expr left;
     final Token operator;
     final Expr right;
     // constructor
     Logical(Expr left, Token operator, Expr right) {
+      super(LOGICAL);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -68,11 +113,12 @@ abstract class Expr {
     }
   }
 
-  static class Grouping extends Expr {
+  static final class Grouping extends Expr {
     // fields
     final Expr expression;
     // constructor
     Grouping(Expr expression) {
+      super(GROUPING);
       this.expression = expression;
     }
     // visitor pattern
@@ -82,12 +128,13 @@ abstract class Expr {
     }
   }
 
-  static class Unary extends Expr {
+  static final class Unary extends Expr {
     // fields
     final Token operator;
     final Expr right;
     // constructor
     Unary(Token operator, Expr right) {
+      super(UNARY);
       this.operator = operator;
       this.right = right;
     }
@@ -98,13 +145,14 @@ abstract class Expr {
     }
   }
 
-  static class Binary extends Expr {
+  static final class Binary extends Expr {
     // fields
     final Expr left;
     final Token operator;
     final Expr right;
     // constructor
     Binary(Expr left, Token operator, Expr right) {
+      super(BINARY);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -116,11 +164,248 @@ abstract class Expr {
     }
   }
 
-  static class Variable extends Expr {
+  static final class Call extends Expr {
+    // fields
+    final Expr callee;
+    final Token paren;
+    final List<Expr> arguments;
+    // constructor
+    Call(Expr callee, Token paren, List<Expr> arguments) {
+      super(CALL);
+      this.callee = callee;
+      this.paren = paren;
+      this.arguments = arguments;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitCallExpr(this);
+    }
+  }
+
+  static final class Get extends Expr {
+    // fields
+    final Expr object;
+    final Token name;
+    // filled in after construction
+    InlineCache cache;
+    // constructor
+    Get(Expr object, Token name) {
+      super(GET);
+      this.object = object;
+      this.name = name;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitGetExpr(this);
+    }
+  }
+
+  static final class Set extends Expr {
+    // fields
+    final Expr object;
+    final Token name;
+    final Expr value;
+    // filled in after construction
+    InlineCache cache;
+    // constructor
+    Set(Expr object, Token name, Expr value) {
+      super(SET);
+      this.object = object;
+      this.name = name;
+      this.value = value;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitSetExpr(this);
+    }
+  }
+
+  static final class Array extends Expr {
+    // fields
+    final Token bracket;
+    final List<Expr> elements;
+    // constructor
+    Array(Token bracket, List<Expr> elements) {
+      super(ARRAY);
+      this.bracket = bracket;
+      this.elements = elements;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitArrayExpr(this);
+    }
+  }
+
+  static final class Map extends Expr {
+    // fields
+    final Token bracket;
+    final List<Expr> keys;
+    final List<Expr> values;
+    // constructor
+    Map(Token bracket, List<Expr> keys, List<Expr> values) {
+      super(MAP);
+      this.bracket = bracket;
+      this.keys = keys;
+      this.values = values;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitMapExpr(this);
+    }
+  }
+
+  static final class Index extends Expr {
+    // fields
+    final Expr object;
+    final Token bracket;
+    final Expr index;
+    // constructor
+    Index(Expr object, Token bracket, Expr index) {
+      super(INDEX);
+      this.object = object;
+      this.bracket = bracket;
+      this.index = index;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitIndexExpr(this);
+    }
+  }
+
+  static final class IndexSet extends Expr {
+    // fields
+    final Expr object;
+    final Token bracket;
+    final Expr index;
+    final Expr value;
+    // constructor
+    IndexSet(Expr object, Token bracket, Expr index, Expr value) {
+      super(INDEXSET);
+      this.object = object;
+      this.bracket = bracket;
+      this.index = index;
+      this.value = value;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitIndexSetExpr(this);
+    }
+  }
+
+  static final class Update extends Expr {
+    // fields
+    final Token name;
+    final Token operator;
+    final Expr value;
+    final boolean postfix;
+    // filled in after construction
+    int scope;
+    int slot;
+    Binding binding;
+    // constructor
+    Update(Token name, Token operator, Expr value, boolean postfix) {
+      super(UPDATE);
+      this.name = name;
+      this.operator = operator;
+      this.value = value;
+      this.postfix = postfix;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitUpdateExpr(this);
+    }
+  }
+
+  static final class UpdateField extends Expr {
+    // fields
+    final Expr object;
+    final Token name;
+    final Token operator;
+    final Expr value;
+    final boolean postfix;
+    // filled in after construction
+    InlineCache cache;
+    // constructor
+    UpdateField(Expr object, Token name, Token operator, Expr value, boolean postfix) {
+      super(UPDATEFIELD);
+      this.object = object;
+      this.name = name;
+      this.operator = operator;
+      this.value = value;
+      this.postfix = postfix;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitUpdateFieldExpr(this);
+    }
+  }
+
+  static final class UpdateIndex extends Expr {
+    // fields
+    final Expr object;
+    final Token bracket;
+    final Token operator;
+    final Expr index;
+    final Expr value;
+    final boolean postfix;
+    // constructor
+    UpdateIndex(Expr object, Token bracket, Token operator, Expr index, Expr value, boolean postfix) {
+      super(UPDATEINDEX);
+      this.object = object;
+      this.bracket = bracket;
+      this.operator = operator;
+      this.index = index;
+      this.value = value;
+      this.postfix = postfix;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitUpdateIndexExpr(this);
+    }
+  }
+
+  static final class Super extends Expr {
+    // fields
+    final Token keyword;
+    final Token method;
+    final Variable receiver;
+    // filled in after construction
+    InlineCache cache;
+    // constructor
+    Super(Token keyword, Token method, Variable receiver) {
+      super(SUPER);
+      this.keyword = keyword;
+      this.method = method;
+      this.receiver = receiver;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitSuperExpr(this);
+    }
+  }
+
+  static final class Variable extends Expr {
     // fields
     final Token name;
+    // filled in after construction
+    int scope;
+    int slot;
+    Binding binding;
+    Object constant;
     // constructor
     Variable(Token name) {
+      super(VARIABLE);
       this.name = name;
     }
     // visitor pattern
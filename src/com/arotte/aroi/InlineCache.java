@@ -0,0 +1,76 @@
+package com.arotte.aroi;
+
+/**InlineCache.java
+ *
+ * What a property node found for the shapes of the instances
+ * it has seen, so that it only looks a property up once per
+ * shape instead of on every execution.
+ *
+ * Most nodes only ever see one shape (monomorphic), some see a
+ * few (polymorphic). Past POLYMORPHIC shapes the oldest entry
+ * is dropped: its shape may well be dead, eg. when the class
+ * is declared again by every call of a function.
+ *
+ * The entries are immutable and the array is replaced on every
+ * addition, so a node can be executed by several threads.
+ */
+final class InlineCache {
+    static final int POLYMORPHIC = 4;
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    static final class Entry {
+        final Shape shape;
+        // slot of the field, or -1 if the instances do not have it
+        final int slot;
+        // otherwise the method of the class, or null
+        final AroiFunction method;
+        // for an assignment that adds the field: the shape after it
+        final Shape transition;
+
+        Entry(Shape shape, int slot, AroiFunction method, Shape transition) {
+            this.shape = shape;
+            this.slot = slot;
+            this.method = method;
+            this.transition = transition;
+        }
+    }
+
+    private volatile Entry[] entries = EMPTY;
+
+    /**
+     * Read a property: a field, else a method of the class.
+     */
+    Entry get(Shape shape, String name) {
+        Entry[] entries = this.entries;
+        for (Entry entry : entries)
+            if (entry.shape == shape) return entry;
+
+        int slot = shape.slot(name);
+        return add(new Entry(shape, slot, slot < 0 ? shape.owner.findMethod(name) : null, null));
+    }
+
+    /**
+     * Assign a field, adding it if the instances do not have it.
+     */
+    Entry set(Shape shape, String name) {
+        Entry[] entries = this.entries;
+        for (Entry entry : entries)
+            if (entry.shape == shape) return entry;
+
+        int slot = shape.slot(name);
+        if (slot >= 0) return add(new Entry(shape, slot, null, null));
+
+        Shape transition = shape.with(name);
+        return add(new Entry(shape, transition.size - 1, null, transition));
+    }
+
+    private synchronized Entry add(Entry entry) {
+        int kept = Math.min(entries.length, POLYMORPHIC - 1);
+        Entry[] added = new Entry[kept + 1];
+        System.arraycopy(entries, entries.length - kept, added, 0, kept);
+        added[kept] = entry;
+        entries = added;
+        return entry;
+    }
+}
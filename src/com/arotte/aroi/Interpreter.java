@@ -1,17 +1,196 @@
 package com.arotte.aroi;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Interpreter implements Expr.Visitor<Object>,
                                     Stmt.Visitor<Void> {
-    private Environment environment = new Environment();
+    // -Daroi.visitorDispatch=true goes through accept() instead of
+    // switching on the kind tags of the nodes, to compare the two
+    private static final boolean VISITOR_DISPATCH = Boolean.getBoolean("aroi.visitorDispatch");
 
-    void interpret(List<Stmt> statements) {
+    private final PrintStream out;
+    private final Reporter reporter;
+    private final Environment globals;
+    private Environment environment;
+    private final Resolver resolver = new Resolver();
+
+    // the function being called, and the frame of the call with
+    // its parameters and locals (see Resolver); null at top level
+    private AroiFunction function = null;
+    private Object[] frame = null;
+
+    // set by a return statement, the statements around it stop
+    // until the call is left; a call of the function itself in
+    // tail position leaves its arguments for the next round
+    private boolean returning = false;
+    private Object returnValue = null;
+    private Object[] tailArguments = null;
+    private AroiInstance tailReceiver = null;
+
+    // running iterations of a parallel loop, and the partial
+    // results of its reductions (see ParallelLoop)
+    private boolean parallel = false;
+    private Object[] partials = null;
+
+    // the tasks spawned by the current run, shared with the forks
+    private final Tasks tasks;
+    // the files the current run opened and did not close, by its
+    // tasks as well (see Builtins)
+    private final Set<Closeable> files = ConcurrentHashMap.newKeySet();
+
+    // charges allocations to source lines, null unless profiling
+    private AllocationProfiler profiler = null;
+
+    // limits of a run, null if the run is not limited at all
+    private Budget budget = null;
+    // statements executed by this interpreter, how many of them are
+    // counted in runSteps, and the count at which the budget is checked next
+    private long steps = 0;
+    private long reportedSteps = 0;
+    private long nextCheck = Long.MAX_VALUE;
+    private long deadline;
+    // the statements executed and the characters left to print by the
+    // whole run, shared with the forks running its tasks
+    private AtomicLong runSteps = new AtomicLong();
+    private AtomicLong outputLeft = new AtomicLong(Long.MAX_VALUE);
+
+    // --arena: run programs on their linearized form
+    private boolean arenaMode = false;
+
+    // operators of the chains (see evaluateChain) being evaluated,
+    // nested evaluations push above each other like on a call stack
+    private Expr[] chain = new Expr[64];
+    private int chainTop = 0;
+
+    Interpreter(PrintStream out, Reporter reporter) {
+        this.out = out;
+        this.reporter = reporter;
+        this.globals = new Environment();
+        this.environment = globals;
+        this.tasks = new Tasks();
+        Builtins.define(globals, files);
+    }
+
+    // see fork()
+    private Interpreter(Interpreter parent) {
+        this.out = parent.out;
+        this.reporter = parent.reporter;
+        this.globals = parent.globals;
+        this.environment = parent.environment;
+        this.function = parent.function;
+        this.frame = parent.frame == null ? null : parent.frame.clone();
+        this.tasks = parent.tasks;
+
+        // limited like the run, counting towards its budget, and
+        // always checked now and then, so that it can be cancelled
+        this.budget = parent.budget;
+        this.deadline = parent.deadline;
+        this.runSteps = parent.runSteps;
+        this.outputLeft = parent.outputLeft;
+        this.nextCheck = Budget.CHECK_INTERVAL;
+    }
+
+    /**
+     * An interpreter for another thread, at the statement this one
+     * is executing, to run iterations of a parallel loop or a task.
+     * It shares the globals, and has a copy of the frame.
+     */
+    Interpreter fork() {
+        return new Interpreter(this);
+    }
+
+    void setProfiler(AllocationProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Limit every following call of interpret().
+     * An interpreter with a budget, even an unlimited one, can also
+     * be cancelled by interrupting its thread.
+     */
+    void setBudget(Budget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Run every following program on a linearized Arena instead
+     * of walking the AST, whenever the program can be compiled to one.
+     */
+    void setArenaMode(boolean arenaMode) {
+        this.arenaMode = arenaMode;
+    }
+
+    Environment globals() {
+        return globals;
+    }
+
+    /**
+     * Execute a program. The statements can also be an Iterable
+     * that is still being filled while they run (see Pipeline),
+     * those are always walked as a tree.
+     */
+    void interpret(Iterable<Stmt> statements) {
+        Arena arena = arenaMode && statements instanceof List
+                ? Arena.compile((List<Stmt>) statements) : null;
+
+        startBudget();
+        tasks.start();
+        int line = 0;
         try {
-            for (Stmt statement : statements)
+            if (arena != null) {
+                new ArenaInterpreter(this, arena, environment).run();
+                return;
+            }
+
+            for (Stmt statement : statements) {
+                line = statement.line;
+                resolver.resolve(statement);
                 execute(statement);
+            }
+
+            // the run is over once its tasks are, or once its time is up
+            boolean timed = budget != null && budget.maxMillis != Budget.UNLIMITED;
+            if (!tasks.await(timed, deadline)) throw timeBudgetExceeded(line);
         } catch (RuntimeError e) {
-            Aroi.runtimeError(e);
+            reporter.runtimeError(e);
+        } catch (BudgetExceededError e) {
+            reporter.budgetExceeded(e);
+        } catch (CancellationException e) {
+            // a task exceeded the budget of the whole run, see Tasks.exceed()
+            BudgetExceededError exceeded = tasks.exceeded();
+            if (exceeded == null) throw e;
+            reporter.budgetExceeded(exceeded);
+        } finally {
+            // the tasks of a failed run are stopped
+            tasks.finish();
+            // an interrupt from a task that came after the run stopped
+            if (tasks.exceeded() != null) Thread.interrupted();
+            closeFiles(line);
+        }
+    }
+
+    private void closeFiles(int line) {
+        // what the run wrote to the files it left open is flushed,
+        // and a server or batch doesn't run out of file descriptors
+        for (Closeable file : files) {
+            files.remove(file);
+            try {
+                file.close();
+            } catch (IOException e) {
+                reporter.runtimeError(new RuntimeError(new Token(TokenType.EOF, "", null, line),
+                        "Can't close the file: " + e.getMessage() + "."));
+            }
         }
     }
 
@@ -25,8 +204,11 @@ public class Interpreter implements Expr.Visitor<Object>,
 
     @Override
     public Object visitLogicalExpr(Expr.Logical expr) {
-        Object left = evaluate(expr.left);
+        if (isChain(expr.left)) return evaluateChain(expr);
+        return logical(expr, evaluate(expr.left));
+    }
 
+    private Object logical(Expr.Logical expr, Object left) {
         if (expr.operator.type == TokenType.OR) {
             if (isTruthy(left)) return left;
         } else {
@@ -38,17 +220,39 @@ public class Interpreter implements Expr.Visitor<Object>,
 
     @Override
     public Object visitGroupingExpr(Expr.Grouping expr) {
-        return evaluate(expr.expression);
+        return evaluate(ungroup(expr.expression));
     }
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
-        Object right = evaluate(expr.right);
+        if (!(ungroup(expr.right) instanceof Expr.Unary))
+            return unary(expr.operator, evaluate(expr.right));
 
-        switch (expr.operator.type) {
+        // a run of prefix operators ("!!x", "- -x") is a chain as well,
+        // evaluated from the innermost operator outwards (see evaluateChain)
+        int base = chainTop;
+        Expr node = expr;
+        while (node instanceof Expr.Unary) {
+            if (chainTop == chain.length) chain = Arrays.copyOf(chain, chainTop * 2);
+            chain[chainTop++] = node;
+            node = ungroup(((Expr.Unary) node).right);
+        }
+
+        try {
+            Object value = evaluate(node);
+            while (chainTop > base)
+                value = unary(((Expr.Unary) chain[--chainTop]).operator, value);
+            return value;
+        } finally {
+            chainTop = base;
+        }
+    }
+
+    Object unary(Token operator, Object right) {
+        switch (operator.type) {
             case BANG: return !isTruthy(right);
             case MINUS:
-                checkNumberOperand(expr.operator, right);
+                checkNumberOperand(operator, right);
                 return -(double)right;
         }
 
@@ -58,18 +262,78 @@ public class Interpreter implements Expr.Visitor<Object>,
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
-        Object left = evaluate(expr.left);
-        Object right = evaluate(expr.right);
+        if (isChain(expr.left)) return evaluateChain(expr);
+        return binary(expr.operator, evaluate(expr.left), evaluate(expr.right));
+    }
+
+    private Object evaluateChain(Expr expr) {
+        // A long chain like "a + b + c + ..." is a left-deep tree, and
+        // evaluating it recursively would take a Java frame per operator.
+        // Instead, walk down its left spine onto an explicit stack, then
+        // apply the operators from the bottom up.
+        int base = chainTop;
+        Expr node = expr;
+        while (node instanceof Expr.Binary || node instanceof Expr.Logical) {
+            if (chainTop == chain.length) chain = Arrays.copyOf(chain, chainTop * 2);
+            chain[chainTop++] = node;
+            node = ungroup(node instanceof Expr.Binary
+                    ? ((Expr.Binary) node).left : ((Expr.Logical) node).left);
+        }
+
+        try {
+            Object value = evaluate(node);
+            while (chainTop > base) {
+                node = chain[--chainTop];
+                if (node instanceof Expr.Binary) {
+                    Expr.Binary binary = (Expr.Binary) node;
+                    value = binary(binary.operator, value, evaluate(binary.right));
+                } else {
+                    value = logical((Expr.Logical) node, value);
+                }
+            }
+            return value;
+        } finally {
+            chainTop = base;
+        }
+    }
+
+    private boolean isChain(Expr left) {
+        left = ungroup(left);
+        return left instanceof Expr.Binary || left instanceof Expr.Logical;
+    }
+
+    private static Expr ungroup(Expr expr) {
+        // skip nested parentheses without recursion
+        while (expr instanceof Expr.Grouping)
+            expr = ((Expr.Grouping) expr).expression;
+        return expr;
+    }
+
+    /**
+     * The new value of an update: "x++" and "x--" only count
+     * numbers, where "x += e" also adds to strings.
+     */
+    Object update(Token operator, Object old, Object value) {
+        if (!(old instanceof Double) && isIncrement(operator))
+            throw new RuntimeError(operator, "Operand must be a number.");
+        return binary(operator, old, value);
+    }
+
+    static boolean isIncrement(Token operator) {
+        // the arithmetic operator of an update keeps its lexeme
+        return operator.lexeme.equals("++") || operator.lexeme.equals("--");
+    }
 
-        switch (expr.operator.type) {
+    Object binary(Token operator, Object left, Object right) {
+        switch (operator.type) {
             case MINUS -> {
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left - (double) right;
             }
             case SLASH -> {
                 if ((double) right == 0)
-                    throw new RuntimeError(expr.operator, "Dividing by zero is not cool.");
-                checkNumberOperands(expr.operator, left, right);
+                    throw new RuntimeError(operator, "Dividing by zero is not cool.");
+                checkNumberOperands(operator, left, right);
                 return (double) left / (double) right;
             }
             case STAR -> {
@@ -81,31 +345,31 @@ public class Interpreter implements Expr.Visitor<Object>,
                     return ((String) right).repeat((int) (double) left);
 
                 // default case: both are numbers
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left * (double) right;
             }
             case GREATER -> {
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left > (double) right;
             }
             case LESS -> {
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left < (double) right;
             }
             case GREATER_EQUAL -> {
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left >= (double) right;
             }
             case LESS_EQUAL -> {
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left <= (double) right;
             }
             case BANG_EQUAL -> {
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return !isEqual(left, right);
             }
             case EQUAL_EQUAL -> {
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return isEqual(left, right);
             }
             case PLUS -> {
@@ -119,7 +383,7 @@ public class Interpreter implements Expr.Visitor<Object>,
                     return (String) left + stringify(right);
                 if (isRightString(left, right))
                     return stringify(left) + (String) right;
-                throw new RuntimeError(expr.operator, "Operands must be either numbers or strings");
+                throw new RuntimeError(operator, "Operands must be either numbers or strings");
             }
         }
 
@@ -129,16 +393,456 @@ public class Interpreter implements Expr.Visitor<Object>,
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return environment.get(expr.name);
+        // see Resolver
+        switch (expr.scope) {
+            case Resolver.CONSTANT: return expr.constant;
+            case Resolver.LOCAL: return frame[expr.slot];
+            case Resolver.BOXED: return ((Binding) frame[expr.slot]).value;
+            case Resolver.UPVALUE: return function.upvalues[expr.slot].value;
+            case Resolver.DYNAMIC: return environment.get(expr.name);
+        }
+
+        Binding binding = expr.binding;
+        if (binding == null || binding.owner != globals) {
+            binding = globals.binding(expr.name.lexeme);
+            // not defined (yet), get() reports it
+            if (binding == null) return globals.get(expr.name);
+            expr.binding = binding;
+        }
+        return binding.value;
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
+        if (expr.scope >= Resolver.REDUCTION) {
+            // a variable declared outside of the parallel loop around
+            if (expr.scope == Resolver.SHARED)
+                throw new RuntimeError(expr.name, "Can't assign '" + expr.name.lexeme
+                        + "' in a parallel loop, other than with 'x = x + ...' or 'x = x * ...'.");
+            Expr.Binary binary = (Expr.Binary) expr.value;
+            return reduce(expr.slot, binary.operator, evaluate(binary.right));
+        }
+        return assign(expr, evaluate(expr.value));
+    }
+
+    @Override
+    public Object visitUpdateExpr(Expr.Update expr) {
+        // the variable is found once, for both the read and the write
+        Object old;
+        Object value;
+        switch (expr.scope) {
+            case Resolver.LOCAL -> {
+                old = frame[expr.slot];
+                value = update(expr.operator, old, evaluate(expr.value));
+                frame[expr.slot] = value;
+                return expr.postfix ? old : value;
+            }
+            case Resolver.REDUCTION -> {
+                return reduce(expr.slot, expr.operator, evaluate(expr.value));
+            }
+            case Resolver.SHARED -> throw new RuntimeError(expr.name, "Can't assign '" + expr.name.lexeme
+                    + "' in a parallel loop, other than with 'x = x + ...' or 'x = x * ...'.");
+        }
+
+        Binding binding = binding(expr);
+        old = binding.value;
+        value = update(expr.operator, old, evaluate(expr.value));
+        binding.value = value;
+        return expr.postfix ? old : value;
+    }
+
+    private Binding binding(Expr.Update expr) {
+        switch (expr.scope) {
+            case Resolver.BOXED: return (Binding) frame[expr.slot];
+            case Resolver.UPVALUE: return function.upvalues[expr.slot];
+            case Resolver.DYNAMIC: {
+                Binding binding = environment.locate(expr.name.lexeme);
+                if (binding == null) throw undefined(expr.name);
+                return binding;
+            }
+        }
+
+        // eg. by a function called in a parallel loop
+        if (parallel)
+            throw new RuntimeError(expr.name,
+                    "Can't assign global '" + expr.name.lexeme + "' in a parallel loop.");
+
+        Binding binding = expr.binding;
+        if (binding == null || binding.owner != globals) {
+            binding = globals.binding(expr.name.lexeme);
+            if (binding == null) throw undefined(expr.name);
+            expr.binding = binding;
+        }
+        return binding;
+    }
+
+    private static RuntimeError undefined(Token name) {
+        return new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    }
+
+    private Object assign(Expr.Assign expr, Object value) {
+        switch (expr.scope) {
+            case Resolver.LOCAL -> {
+                frame[expr.slot] = value;
+                return value;
+            }
+            case Resolver.BOXED -> {
+                ((Binding) frame[expr.slot]).value = value;
+                return value;
+            }
+            case Resolver.UPVALUE -> {
+                function.upvalues[expr.slot].value = value;
+                return value;
+            }
+            case Resolver.DYNAMIC -> {
+                environment.assign(expr.name, value);
+                return value;
+            }
+        }
+
+        // eg. by a function called in a parallel loop
+        if (parallel)
+            throw new RuntimeError(expr.name,
+                    "Can't assign global '" + expr.name.lexeme + "' in a parallel loop.");
+
+        Binding binding = expr.binding;
+        if (binding == null || binding.owner != globals) {
+            binding = globals.binding(expr.name.lexeme);
+            if (binding == null) {
+                globals.assign(expr.name, value);
+                return value;
+            }
+            expr.binding = binding;
+        }
+        binding.value = value;
+        return value;
+    }
+
+    @Override
+    public Object visitCallExpr(Expr.Call expr) {
+        return call(expr, false);
+    }
+
+    private Object call(Expr.Call expr, boolean tail) {
+        // a method called on an instance (or on "super") gets the
+        // instance as its receiver, without being bound to it first
+        Object callee;
+        AroiInstance receiver = null;
+        if (expr.callee.kind == Expr.GET) {
+            Expr.Get get = (Expr.Get) expr.callee;
+            receiver = instance(evaluate(get.object), get.name, "Only instances have properties.");
+            InlineCache.Entry entry = cache(get).get(receiver.shape, get.name.lexeme);
+            if (entry.slot >= 0) {
+                callee = receiver.fields[entry.slot];
+                receiver = null;
+            } else {
+                callee = method(entry, get.name);
+            }
+        } else if (expr.callee.kind == Expr.SUPER) {
+            Expr.Super superExpr = (Expr.Super) expr.callee;
+            receiver = (AroiInstance) evaluate(superExpr.receiver);
+            callee = superMethod(superExpr);
+        } else {
+            callee = evaluate(expr.callee);
+            if (callee instanceof NativeFunction && ((NativeFunction) callee).arity() == expr.arguments.size())
+                return callNative((NativeFunction) callee, expr);
+        }
+
+        Object[] arguments = arguments(expr);
+
+        // a tail call of the function itself, see call() below
+        if (tail && callee == function && arguments.length == function.arity()) {
+            tailArguments = arguments;
+            tailReceiver = receiver;
+            returning = true;
+            return null;
+        }
+        return invoke(callee, receiver, arguments, expr.paren);
+    }
+
+    private Object callNative(NativeFunction callee, Expr.Call expr) {
+        // the arguments are passed as they are evaluated, without
+        // an array, see invoke() for the errors
+        List<Expr> arguments = expr.arguments;
+        Object a = arguments.size() > 0 ? evaluate(arguments.get(0)) : null;
+        Object b = arguments.size() > 1 ? evaluate(arguments.get(1)) : null;
+        Object c = arguments.size() > 2 ? evaluate(arguments.get(2)) : null;
+        try {
+            return switch (arguments.size()) {
+                case 0 -> callee.call();
+                case 1 -> callee.call(a);
+                case 2 -> callee.call(a, b);
+                default -> callee.call(a, b, c);
+            };
+        } catch (RuntimeError e) {
+            if (e.token != null) throw e;
+            throw new RuntimeError(expr.paren, e.getMessage());
+        }
+    }
+
+    private Object[] arguments(Expr.Call expr) {
+        Object[] arguments = new Object[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = evaluate(expr.arguments.get(i));
+        return arguments;
+    }
+
+    private Object invoke(Object callee, AroiInstance receiver, Object[] arguments, Token paren) {
+        if (!(callee instanceof AroiCallable))
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+
+        AroiCallable callable = (AroiCallable) callee;
+        if (arguments.length != callable.arity())
+            throw new RuntimeError(paren,
+                    "Expected " + callable.arity() + " arguments but got " + arguments.length + ".");
+
+        try {
+            if (receiver != null) return call((AroiFunction) callable, receiver, arguments);
+            return callable.call(this, arguments);
+        } catch (StackOverflowError e) {
+            throw new RuntimeError(paren, "Stack overflow.");
+        } catch (RuntimeError e) {
+            // an error of a native function, see NativeFunction
+            if (e.token != null) throw e;
+            throw new RuntimeError(paren, e.getMessage());
+        }
+    }
+
+    Object call(AroiFunction callee, Object receiver, Object[] arguments) {
+        MemoCache memo = callee.memo;
+        if (memo == null) return callBody(callee, receiver, arguments);
+
+        // the arguments are not changed once the call is made
+        List<Object> key = Arrays.asList(arguments);
+        Object result = memo.get(key);
+        if (result == MemoCache.ABSENT) {
+            result = callBody(callee, receiver, arguments);
+            memo.put(key, result);
+        }
+        return result;
+    }
+
+    private Object callBody(AroiFunction callee, Object receiver, Object[] arguments) {
+        Stmt.Function declaration = callee.declaration;
+        AroiFunction previousFunction = function;
+        Object[] previousFrame = frame;
+        Environment previous = environment;
+
+        try {
+            function = callee;
+            environment = callee.closure;
+
+            for (;;) {
+                frame = new Object[declaration.frameSize];
+                int parameters = arguments.length;
+                for (int i = 0; i < parameters; i++)
+                    frame[i] = declaration.boxedParams[i] ? new Binding(null, arguments[i]) : arguments[i];
+                // "this" comes after the parameters, see Resolver
+                if (receiver != null)
+                    frame[parameters] = declaration.boxedParams[parameters] ? new Binding(null, receiver) : receiver;
+
+                checkpoint(declaration.line);
+                executeBlock(declaration.body, environment);
+                if (!returning) break;
+
+                returning = false;
+                if (tailArguments == null) break;
+
+                // "return f(...)" inside f: run the body again in the
+                // same Java frame, so tail recursion takes no stack
+                arguments = tailArguments;
+                tailArguments = null;
+                if (tailReceiver != null) receiver = tailReceiver;
+                tailReceiver = null;
+            }
+
+            Object value = returnValue;
+            returnValue = null;
+            return callee.initializer ? receiver : value;
+        } finally {
+            function = previousFunction;
+            frame = previousFrame;
+            environment = previous;
+        }
+    }
+
+    @Override
+    public Object visitGetExpr(Expr.Get expr) {
+        AroiInstance instance = instance(evaluate(expr.object), expr.name, "Only instances have properties.");
+        InlineCache.Entry entry = cache(expr).get(instance.shape, expr.name.lexeme);
+        if (entry.slot >= 0) return instance.fields[entry.slot];
+        return method(entry, expr.name).bind(instance);
+    }
+
+    @Override
+    public Object visitSetExpr(Expr.Set expr) {
+        AroiInstance instance = instance(evaluate(expr.object), expr.name, "Only instances have fields.");
         Object value = evaluate(expr.value);
-        environment.assign(expr.name, value);
+        // looked up after the value, which may have added fields
+        instance.set(cache(expr), expr.name.lexeme, value);
         return value;
     }
 
+    @Override
+    public Object visitUpdateFieldExpr(Expr.UpdateField expr) {
+        AroiInstance instance = instance(evaluate(expr.object), expr.name, "Only instances have fields.");
+        InlineCache.Entry entry = cache(expr).get(instance.shape, expr.name.lexeme);
+        if (entry.slot < 0) {
+            method(entry, expr.name);
+            throw new RuntimeError(expr.name, "Only fields can be updated.");
+        }
+
+        Object old = instance.fields[entry.slot];
+        Object value = update(expr.operator, old, evaluate(expr.value));
+        // the value may have added fields, but not moved this one
+        instance.set(entry.slot, value);
+        return expr.postfix ? old : value;
+    }
+
+    @Override
+    public Object visitArrayExpr(Expr.Array expr) {
+        Object[] elements = new Object[expr.elements.size()];
+        for (int i = 0; i < elements.length; i++)
+            elements[i] = evaluate(expr.elements.get(i));
+        return AroiArray.of(elements);
+    }
+
+    @Override
+    public Object visitMapExpr(Expr.Map expr) {
+        AroiMap map = new AroiMap();
+        for (int i = 0; i < expr.keys.size(); i++) {
+            Object key = key(evaluate(expr.keys.get(i)), expr.bracket);
+            map.put(key, evaluate(expr.values.get(i)));
+        }
+        return map;
+    }
+
+    @Override
+    public Object visitIndexExpr(Expr.Index expr) {
+        Object object = evaluate(expr.object);
+        if (object instanceof AroiArray) {
+            AroiArray array = (AroiArray) object;
+            int index = index(array, evaluate(expr.index), expr.bracket);
+            return array.get(index);
+        }
+        if (object instanceof AroiMap) {
+            Object key = evaluate(expr.index);
+            Object value = ((AroiMap) object).get(key);
+            if (value == AroiMap.ABSENT)
+                throw new RuntimeError(expr.bracket, "Undefined key '" + stringify(key) + "'.");
+            return value;
+        }
+        throw new RuntimeError(expr.bracket, "Only arrays and maps can be indexed.");
+    }
+
+    @Override
+    public Object visitIndexSetExpr(Expr.IndexSet expr) {
+        Object object = evaluate(expr.object);
+        if (object instanceof AroiArray) {
+            AroiArray array = (AroiArray) object;
+            int index = index(array, evaluate(expr.index), expr.bracket);
+            Object value = evaluate(expr.value);
+            array.set(index, value);
+            return value;
+        }
+        if (object instanceof AroiMap) {
+            Object key = key(evaluate(expr.index), expr.bracket);
+            Object value = evaluate(expr.value);
+            ((AroiMap) object).put(key, value);
+            return value;
+        }
+        throw new RuntimeError(expr.bracket, "Only arrays and maps can be indexed.");
+    }
+
+    @Override
+    public Object visitUpdateIndexExpr(Expr.UpdateIndex expr) {
+        Object object = evaluate(expr.object);
+        Object old;
+        Object value;
+        if (object instanceof AroiArray) {
+            AroiArray array = (AroiArray) object;
+            int index = index(array, evaluate(expr.index), expr.bracket);
+            old = array.get(index);
+            value = update(expr.operator, old, evaluate(expr.value));
+            array.set(index, value);
+        } else if (object instanceof AroiMap) {
+            AroiMap map = (AroiMap) object;
+            Object key = key(evaluate(expr.index), expr.bracket);
+            old = map.get(key);
+            if (old == AroiMap.ABSENT)
+                throw new RuntimeError(expr.bracket, "Undefined key '" + stringify(key) + "'.");
+            value = update(expr.operator, old, evaluate(expr.value));
+            map.put(key, value);
+        } else {
+            throw new RuntimeError(expr.bracket, "Only arrays and maps can be indexed.");
+        }
+        return expr.postfix ? old : value;
+    }
+
+    private Object key(Object key, Token bracket) {
+        if (key != null) return key;
+        throw new RuntimeError(bracket, "Map keys can't be nil.");
+    }
+
+    private int index(AroiArray array, Object index, Token bracket) {
+        if (!(index instanceof Double) || (double) index != (int) (double) index)
+            throw new RuntimeError(bracket, "Array index must be an integer.");
+
+        int i = (int) (double) index;
+        if (i < 0 || i >= array.size)
+            throw new RuntimeError(bracket,
+                    "Index " + i + " out of bounds for array of length " + array.size + ".");
+        return i;
+    }
+
+    @Override
+    public Object visitSuperExpr(Expr.Super expr) {
+        AroiInstance instance = (AroiInstance) evaluate(expr.receiver);
+        return superMethod(expr).bind(instance);
+    }
+
+    private AroiInstance instance(Object object, Token name, String message) {
+        if (object instanceof AroiInstance) return (AroiInstance) object;
+        throw new RuntimeError(name, message);
+    }
+
+    private AroiFunction method(InlineCache.Entry entry, Token name) {
+        if (entry.method != null) return entry.method;
+        throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+    }
+
+    private AroiFunction superMethod(Expr.Super expr) {
+        // the root shape of the superclass has no fields, so the cache
+        // holds the method, per class declared by the enclosing method
+        AroiClass superclass = function.owner.superclass;
+        return method(cache(expr).get(superclass.root, expr.method.lexeme), expr.method);
+    }
+
+    // the caches are created on first use, a race only loses one
+
+    private static InlineCache cache(Expr.Get expr) {
+        InlineCache cache = expr.cache;
+        if (cache == null) expr.cache = cache = new InlineCache();
+        return cache;
+    }
+
+    private static InlineCache cache(Expr.Set expr) {
+        InlineCache cache = expr.cache;
+        if (cache == null) expr.cache = cache = new InlineCache();
+        return cache;
+    }
+
+    private static InlineCache cache(Expr.UpdateField expr) {
+        InlineCache cache = expr.cache;
+        if (cache == null) expr.cache = cache = new InlineCache();
+        return cache;
+    }
+
+    private static InlineCache cache(Expr.Super expr) {
+        InlineCache cache = expr.cache;
+        if (cache == null) expr.cache = cache = new InlineCache();
+        return cache;
+    }
 
     // ====================================================
     // Statement visitors
@@ -161,8 +865,7 @@ public class Interpreter implements Expr.Visitor<Object>,
 
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
-        Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        print(evaluate(stmt.expression), stmt.line);
         return null;
     }
 
@@ -175,49 +878,477 @@ public class Interpreter implements Expr.Visitor<Object>,
 
         // if the variable is not initialized,
         // its default value will be 'nil'
-        environment.define(stmt.name.lexeme, value);
+        if (!stmt.local)
+            environment.define(stmt.name.lexeme, value);
+        else
+            frame[stmt.slot] = stmt.boxed ? new Binding(null, value) : value;
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        // see Resolver
+        if (stmt.impure != null)
+            throw new RuntimeError(stmt.name, "Can't memoize '" + stmt.name.lexeme + "': " + stmt.impure + ".");
+
+        Binding cell = cell(stmt.local, stmt.boxed, stmt.slot);
+        // functions declared in methods can use "super" as well
+        AroiFunction declared = new AroiFunction(stmt, environment, upvalues(stmt),
+                function == null ? null : function.owner, false);
+        define(stmt.name.lexeme, stmt.local, stmt.slot, cell, declared);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        AroiClass superclass = null;
+        if (stmt.superclass != null) {
+            Object value = evaluate(stmt.superclass);
+            if (!(value instanceof AroiClass))
+                throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
+            superclass = (AroiClass) value;
+        }
+
+        Binding cell = cell(stmt.local, stmt.boxed, stmt.slot);
+        AroiClass klass = new AroiClass(stmt.name.lexeme, superclass);
+        for (Stmt.Function method : stmt.methods) {
+            boolean initializer = method.name.lexeme.equals("init");
+            klass.addMethod(method.name.lexeme,
+                    new AroiFunction(method, environment, upvalues(method), klass, initializer));
+        }
+        define(stmt.name.lexeme, stmt.local, stmt.slot, cell, klass);
+        return null;
+    }
+
+    private Binding cell(boolean local, boolean boxed, int slot) {
+        // the cell of a captured local comes before its value,
+        // which can capture itself (eg. a recursive function)
+        if (!local || !boxed) return null;
+
+        Binding cell = new Binding(null, null);
+        frame[slot] = cell;
+        return cell;
+    }
+
+    private void define(String name, boolean local, int slot, Binding cell, Object value) {
+        if (!local)
+            environment.define(name, value);
+        else if (cell != null)
+            cell.value = value;
+        else
+            frame[slot] = value;
+    }
+
+    private Binding[] upvalues(Stmt.Function declaration) {
+        Binding[] upvalues = new Binding[declaration.captures.length];
+        for (int i = 0; i < upvalues.length; i++) {
+            int capture = declaration.captures[i];
+            upvalues[i] = capture >= 0 ? (Binding) frame[capture] : function.upvalues[-1 - capture];
+        }
+        return upvalues;
+    }
+
+    @Override
+    public Void visitSpawnStmt(Stmt.Spawn stmt) {
+        // the block is called like a closure declared here
+        AroiFunction body = new AroiFunction(stmt.body, environment, upvalues(stmt.body),
+                function == null ? null : function.owner, false);
+        environment.share();
+
+        Interpreter task = fork();
+        tasks.spawn(() -> task.run(stmt.keyword, body));
+        return null;
+    }
+
+    // the thread of a task
+    private void run(Token keyword, AroiFunction body) {
+        try {
+            call(body, null, new Object[0]);
+        } catch (RuntimeError e) {
+            reporter.runtimeError(e);
+        } catch (BudgetExceededError e) {
+            // the budget is the run's, it ends the run
+            tasks.exceed(e);
+        } catch (CancellationException e) {
+            // cancelled with the run, see Tasks
+        } catch (RuntimeException e) {
+            // a bug of the interpreter, reported as an error of the task
+            reporter.runtimeError(new RuntimeError(keyword, "Internal error: " + e + "."));
+        }
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        Object value = null;
+        if (stmt.value != null && stmt.value.kind == Expr.CALL) {
+            value = call((Expr.Call) stmt.value, true);
+            // a tail call, see call()
+            if (returning) return null;
+        } else if (stmt.value != null) {
+            value = evaluate(stmt.value);
+        }
+
+        returnValue = value;
+        returning = true;
         return null;
     }
 
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
-        while (isTruthy(evaluate(stmt.condition)))
+        while (isTruthy(evaluate(stmt.condition))) {
             execute(stmt.body);
+            if (returning) break;
+            checkpoint(stmt.line);
+        }
         return null;
     }
 
+    @Override
+    public Void visitForInStmt(Stmt.ForIn stmt) {
+        double start = range(stmt, evaluate(stmt.counter.initializer));
+        double end = range(stmt, evaluate(stmt.end));
+        double step = stmt.step == null ? 1 : range(stmt, evaluate(stmt.step));
+        if (step == 0)
+            throw new RuntimeError(stmt.keyword, "Step of a range can't be zero.");
+
+        // a negative step counts down to the end
+        long count = step > 0 ? ParallelLoop.iterations(start, step, end, false)
+                : ParallelLoop.iterations(-start, -step, -end, false);
+
+        // the counter is kept here, and only published to the variable
+        // at the start of every iteration, so the body may assign it
+        Stmt.Var counter = stmt.counter;
+        if (counter.local) {
+            for (long i = 0; i < count; i++) {
+                Object value = start + i * step;
+                frame[counter.slot] = counter.boxed ? new Binding(null, value) : value;
+                execute(stmt.body);
+                if (returning) break;
+                checkpoint(stmt.line);
+            }
+            return null;
+        }
+
+        // in top-level code, the variable is in an environment of the
+        // loop, a new one every iteration if a function captures it
+        String name = counter.name.lexeme;
+        Environment previous = environment;
+        try {
+            Binding binding = null;
+            for (long i = 0; i < count; i++) {
+                Object value = start + i * step;
+                if (binding == null || counter.boxed) {
+                    environment = new Environment(previous);
+                    environment.define(name, value);
+                    binding = environment.binding(name);
+                } else {
+                    binding.value = value;
+                }
+                execute(stmt.body);
+                checkpoint(stmt.line);
+            }
+        } finally {
+            environment = previous;
+        }
+        return null;
+    }
+
+    private double range(Stmt.ForIn stmt, Object value) {
+        if (value instanceof Double) return (double) value;
+        throw new RuntimeError(stmt.keyword, "Bounds and step of a range must be numbers.");
+    }
+
+    @Override
+    public Void visitParallelStmt(Stmt.Parallel stmt) {
+        double start = bound(stmt, evaluate(stmt.counter.initializer));
+        double end = bound(stmt, evaluate(stmt.end));
+        double step = bound(stmt, evaluate(stmt.step));
+        if (!(step > 0))
+            throw new RuntimeError(stmt.keyword, "Step of a parallel loop must be positive.");
+
+        // "+" on strings is not associative across the chunks, the
+        // variables reduced and the values added to them are numbers
+        for (Expr.Assign reduction : stmt.reductions) {
+            if (reduction.scope == Resolver.REDUCTION || reduction.scope == Resolver.SHARED) continue;
+            Expr.Binary combined = (Expr.Binary) reduction.value;
+            if (!(evaluate(combined.left) instanceof Double))
+                throw notReducible(combined.operator, reduction.name);
+        }
+
+        ParallelLoop loop = new ParallelLoop(this, stmt, start, step);
+        long count = loop.iterations(end, stmt.comparison.type == TokenType.LESS_EQUAL);
+        // a limited or profiled run is counted by this interpreter alone
+        Object[] partials = budget != null || profiler != null ? iterate(loop, 0, count) : loop.run(count);
+
+        // x = x + partial, for each variable reduced by the iterations
+        for (int i = 0; i < partials.length; i++) {
+            if (partials[i] == ParallelLoop.NO_PARTIAL) continue;
+            Expr.Assign reduction = stmt.reductions.get(i);
+            if (reduction.scope == Resolver.REDUCTION) {
+                // into the partial result of an enclosing parallel loop
+                reduce(reduction.slot, ((Expr.Binary) reduction.value).operator, partials[i]);
+            } else if (reduction.scope != Resolver.SHARED) {
+                Expr.Binary combined = (Expr.Binary) reduction.value;
+                assign(reduction, update(combined.operator, evaluate(combined.left), partials[i]));
+            } else {
+                // reports the error, see visitAssignExpr()
+                visitAssignExpr(reduction);
+            }
+        }
+        return null;
+    }
+
+    private double bound(Stmt.Parallel stmt, Object value) {
+        if (value instanceof Double) return (double) value;
+        throw new RuntimeError(stmt.keyword, "Bounds and step of a parallel loop must be numbers.");
+    }
+
+    /**
+     * Run iterations from to to of a parallel loop, return the
+     * partial results of its reductions.
+     */
+    Object[] iterate(ParallelLoop loop, long from, long to) {
+        Stmt.Parallel stmt = loop.stmt;
+        Stmt.Var counter = stmt.counter;
+        Object[] result = new Object[stmt.reductions.size()];
+        Arrays.fill(result, ParallelLoop.NO_PARTIAL);
+
+        boolean previousParallel = parallel;
+        Object[] previousPartials = partials;
+        Environment previous = environment;
+        parallel = true;
+        partials = result;
+        try {
+            for (long i = from; i < to && !loop.failed; i++) {
+                // every iteration has a counter of its own
+                Object value = loop.start + i * loop.step;
+                if (!counter.local) {
+                    environment = new Environment(previous);
+                    environment.define(counter.name.lexeme, value);
+                } else if (counter.boxed) {
+                    frame[counter.slot] = new Binding(null, value);
+                } else {
+                    frame[counter.slot] = value;
+                }
+
+                execute(stmt.body);
+                checkpoint(stmt.line);
+            }
+        } finally {
+            parallel = previousParallel;
+            partials = previousPartials;
+            environment = previous;
+        }
+        return result;
+    }
+
+    private static RuntimeError notReducible(Token operator, Token name) {
+        return new RuntimeError(operator, "Can't reduce '" + name.lexeme
+                + "' in a parallel loop, other than by adding or multiplying numbers.");
+    }
+
+    private Object reduce(int slot, Token operator, Object value) {
+        // into the partial result of the iterations this interpreter runs
+        if (!(value instanceof Double))
+            throw new RuntimeError(operator, "Operands of a reduction must be numbers.");
+        Object partial = partials[slot];
+        if (partial != ParallelLoop.NO_PARTIAL)
+            value = binary(operator, partial, value);
+        partials[slot] = value;
+        return value;
+    }
+
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        checkpoint(stmt.line);
+        // the locals of blocks in functions are in the frame
+        executeBlock(statementsOf(stmt), frame == null ? new Environment(environment) : environment);
         return null;
     }
 
     // ====================================================
 
     private Object evaluate(Expr expr) {
-        return expr.accept(this);
+        if (VISITOR_DISPATCH) return expr.accept(this);
+
+        // dispatch on the kind tag: one switch instead of the two
+        // megamorphic calls (accept, visit) of the visitor pattern
+        return switch (expr.kind) {
+            case Expr.ASSIGN -> visitAssignExpr((Expr.Assign) expr);
+            case Expr.LITERAL -> ((Expr.Literal) expr).value;
+            case Expr.LOGICAL -> visitLogicalExpr((Expr.Logical) expr);
+            case Expr.GROUPING -> visitGroupingExpr((Expr.Grouping) expr);
+            case Expr.UNARY -> visitUnaryExpr((Expr.Unary) expr);
+            case Expr.BINARY -> visitBinaryExpr((Expr.Binary) expr);
+            case Expr.VARIABLE -> visitVariableExpr((Expr.Variable) expr);
+            case Expr.CALL -> visitCallExpr((Expr.Call) expr);
+            case Expr.GET -> visitGetExpr((Expr.Get) expr);
+            case Expr.SET -> visitSetExpr((Expr.Set) expr);
+            case Expr.INDEX -> visitIndexExpr((Expr.Index) expr);
+            case Expr.INDEXSET -> visitIndexSetExpr((Expr.IndexSet) expr);
+            case Expr.UPDATE -> visitUpdateExpr((Expr.Update) expr);
+            case Expr.UPDATEFIELD -> visitUpdateFieldExpr((Expr.UpdateField) expr);
+            case Expr.UPDATEINDEX -> visitUpdateIndexExpr((Expr.UpdateIndex) expr);
+            default -> expr.accept(this);
+        };
     }
 
     private void execute(Stmt stmt) {
-        stmt.accept(this);
+        steps++;
+
+        if (profiler == null) {
+            dispatch(stmt);
+            return;
+        }
+
+        profiler.enter();
+        try {
+            dispatch(stmt);
+        } finally {
+            profiler.exit(stmt.line);
+        }
+    }
+
+    private void dispatch(Stmt stmt) {
+        if (VISITOR_DISPATCH) {
+            stmt.accept(this);
+            return;
+        }
+
+        // see evaluate()
+        switch (stmt.kind) {
+            case Stmt.BLOCK -> visitBlockStmt((Stmt.Block) stmt);
+            case Stmt.EXPRESSION -> visitExpressionStmt((Stmt.Expression) stmt);
+            case Stmt.IF -> visitIfStmt((Stmt.If) stmt);
+            case Stmt.PRINT -> visitPrintStmt((Stmt.Print) stmt);
+            case Stmt.VAR -> visitVarStmt((Stmt.Var) stmt);
+            case Stmt.WHILE -> visitWhileStmt((Stmt.While) stmt);
+            case Stmt.FORIN -> visitForInStmt((Stmt.ForIn) stmt);
+            case Stmt.PARALLEL -> visitParallelStmt((Stmt.Parallel) stmt);
+            case Stmt.RETURN -> visitReturnStmt((Stmt.Return) stmt);
+            case Stmt.FUNCTION -> visitFunctionStmt((Stmt.Function) stmt);
+            case Stmt.CLASS -> visitClassStmt((Stmt.Class) stmt);
+            default -> stmt.accept(this);
+        }
     }
 
     void executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
+
+        // statements left in the enclosing blocks, only needed when
+        // a block directly contains another one: nested blocks are
+        // entered without recursion, so deep nesting cannot overflow
+        // the Java stack (does the work of execute() and visitBlockStmt())
+        Deque<Iterator<Stmt>> enclosing = null;
+
         try {
             // temporarily change the environment of
             // the interpreter to execute the list of statements
             // inside the block scope
             this.environment = environment;
 
-            for (Stmt statement : statements)
-                execute(statement);
+            Iterator<Stmt> current = statements.iterator();
+            for (;;) {
+                while (current.hasNext()) {
+                    Stmt statement = current.next();
+                    if (!(statement instanceof Stmt.Block) || profiler != null) {
+                        execute(statement);
+                        if (returning) return;
+                        continue;
+                    }
+
+                    steps++;
+                    checkpoint(statement.line);
+                    if (enclosing == null) enclosing = new ArrayDeque<>();
+                    enclosing.push(current);
+                    current = statementsOf((Stmt.Block) statement).iterator();
+                    if (frame == null) this.environment = new Environment(this.environment);
+                }
+
+                if (enclosing == null || enclosing.isEmpty()) break;
+                current = enclosing.pop();
+                if (frame == null) this.environment = this.environment.enclosing;
+            }
         } finally {
             this.environment = previous;
         }
     }
 
-    private boolean isTruthy(Object object) {
+    private List<Stmt> statementsOf(Stmt.Block block) {
+        // a block deferred by a lazy parse is resolved when it first runs
+        if (Parser.isUnparsed(block.statements)) resolver.resolveDeferred(block);
+        return block.statements;
+    }
+
+    void print(Object value, int line) {
+        String text = stringify(value);
+
+        // the newline counts as well
+        if (budget != null && outputLeft.addAndGet(-(text.length() + 1)) < 0)
+            throw new BudgetExceededError(line,
+                    "Output budget of " + budget.maxOutput + " characters exceeded.");
+
+        out.println(text);
+    }
+
+    void countStep() {
+        steps++;
+    }
+
+    void checkpoint(int line) {
+        // called at loop back-edges and block entries
+        if (steps >= nextCheck) checkBudget(line);
+    }
+
+    private void startBudget() {
+        steps = 0;
+        reportedSteps = 0;
+        // new counters, the forks of an earlier run keep theirs
+        runSteps = new AtomicLong();
+        if (budget == null) {
+            nextCheck = Long.MAX_VALUE;
+            outputLeft = new AtomicLong(Long.MAX_VALUE);
+            return;
+        }
+
+        nextCheck = Budget.CHECK_INTERVAL;
+        deadline = System.nanoTime() + budget.maxMillis * 1_000_000;
+        outputLeft = new AtomicLong(budget.maxOutput == Budget.UNLIMITED ? Long.MAX_VALUE : budget.maxOutput);
+    }
+
+    private void checkBudget(int line) {
+        // slow path, taken once every CHECK_INTERVAL statements
+
+        // let a runaway script be cancelled, eg. by a server timeout
+        if (Thread.interrupted())
+            throw new CancellationException("Execution cancelled.");
+
+        // a task of an unlimited run, only checked for cancellation
+        if (budget == null) {
+            nextCheck = steps + Budget.CHECK_INTERVAL;
+            return;
+        }
+
+        // the statements of every interpreter of the run count
+        long total = runSteps.addAndGet(steps - reportedSteps);
+        reportedSteps = steps;
+        if (budget.maxSteps != Budget.UNLIMITED && total > budget.maxSteps)
+            throw new BudgetExceededError(line,
+                    "Step budget of " + budget.maxSteps + " statements exceeded.");
+
+        if (budget.maxMillis != Budget.UNLIMITED && System.nanoTime() - deadline > 0)
+            throw timeBudgetExceeded(line);
+
+        nextCheck = steps + Budget.CHECK_INTERVAL;
+        if (budget.maxSteps != Budget.UNLIMITED)
+            nextCheck = Math.min(nextCheck, steps + budget.maxSteps - total + 1);
+    }
+
+    private BudgetExceededError timeBudgetExceeded(int line) {
+        return new BudgetExceededError(line, "Time budget of " + budget.maxMillis + " ms exceeded.");
+    }
+
+    boolean isTruthy(Object object) {
         // "false" and "nil" are falsey, and everything else is truthy
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean)object;
@@ -252,7 +1383,7 @@ public class Interpreter implements Expr.Visitor<Object>,
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    private String stringify(Object o) {
+    static String stringify(Object o) {
         if (o == null) return "nil";
 
         if (o instanceof Double) {
@@ -0,0 +1,81 @@
+package com.arotte.aroi;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**MemoCache.java
+ *
+ * The results of a memoized function, by the values of its
+ * arguments: numbers, strings, booleans and nil by value, arrays,
+ * maps and instances by identity. Past its capacity, the least
+ * recently used result is dropped.
+ *
+ * A closure has a cache of its own, as it may close over other
+ * values. The cache is locked while it is read or written, not
+ * while a result is computed, so tasks can share the function.
+ */
+final class MemoCache {
+    static final int CAPACITY = 1024;
+
+    // returned by get() for arguments not in the cache
+    static final Object ABSENT = new Object();
+
+    private final int capacity;
+    private final Map<List<Object>, Object> results;
+    private long hits = 0;
+    private long misses = 0;
+
+    // see AroiChannel
+    private final ReentrantLock lock = new ReentrantLock();
+
+    MemoCache(int capacity) {
+        this.capacity = capacity;
+        // in access order, so that the eldest entry is the least recently used
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+                return size() > MemoCache.this.capacity;
+            }
+        };
+    }
+
+    Object get(List<Object> arguments) {
+        lock.lock();
+        try {
+            Object result = results.getOrDefault(arguments, ABSENT);
+            if (result == ABSENT) misses++;
+            else hits++;
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put(List<Object> arguments, Object result) {
+        lock.lock();
+        try {
+            results.put(arguments, result);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The size, capacity, hits and misses of the cache, as a map.
+     */
+    AroiMap stats() {
+        lock.lock();
+        try {
+            AroiMap stats = new AroiMap();
+            stats.put("size", (double) results.size());
+            stats.put("capacity", (double) capacity);
+            stats.put("hits", (double) hits);
+            stats.put("misses", (double) misses);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
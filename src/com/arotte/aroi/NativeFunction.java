@@ -0,0 +1,103 @@
+package com.arotte.aroi;
+
+/**NativeFunction.java
+ *
+ * A function implemented in Java, like the builtins. Its body
+ * reports errors with error(), which have no token of their
+ * own: the interpreter reports them at the call.
+ *
+ * There is a body interface per arity, taking the arguments
+ * directly, so that the interpreter calls a native function
+ * without putting its arguments in an array first (see
+ * Interpreter.callNative()).
+ */
+final class NativeFunction implements AroiCallable {
+    interface Body0 {
+        Object call();
+    }
+
+    interface Body1 {
+        Object call(Object a);
+    }
+
+    interface Body2 {
+        Object call(Object a, Object b);
+    }
+
+    interface Body3 {
+        Object call(Object a, Object b, Object c);
+    }
+
+    final String name;
+    private final int arity;
+    // the body of the arity, the others are null
+    private final Body0 body0;
+    private final Body1 body1;
+    private final Body2 body2;
+    private final Body3 body3;
+
+    private NativeFunction(String name, int arity, Body0 body0, Body1 body1, Body2 body2, Body3 body3) {
+        this.name = name;
+        this.arity = arity;
+        this.body0 = body0;
+        this.body1 = body1;
+        this.body2 = body2;
+        this.body3 = body3;
+    }
+
+    NativeFunction(String name, Body0 body) {
+        this(name, 0, body, null, null, null);
+    }
+
+    NativeFunction(String name, Body1 body) {
+        this(name, 1, null, body, null, null);
+    }
+
+    NativeFunction(String name, Body2 body) {
+        this(name, 2, null, null, body, null);
+    }
+
+    NativeFunction(String name, Body3 body) {
+        this(name, 3, null, null, null, body);
+    }
+
+    static RuntimeError error(String message) {
+        return new RuntimeError(null, message);
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    Object call() {
+        return body0.call();
+    }
+
+    Object call(Object a) {
+        return body1.call(a);
+    }
+
+    Object call(Object a, Object b) {
+        return body2.call(a, b);
+    }
+
+    Object call(Object a, Object b, Object c) {
+        return body3.call(a, b, c);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return switch (arity) {
+            case 0 -> body0.call();
+            case 1 -> body1.call(arguments[0]);
+            case 2 -> body2.call(arguments[0], arguments[1]);
+            default -> body3.call(arguments[0], arguments[1], arguments[2]);
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn " + name + ">";
+    }
+}
@@ -0,0 +1,144 @@
+package com.arotte.aroi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**ParallelLoop.java
+ *
+ * Runs the iterations of a parallel loop on all cores: the range
+ * of iterations is split into chunks, about CHUNKS_PER_THREAD
+ * per thread, that the threads take in turn, and every chunk
+ * runs on a fork of the interpreter of the loop (see
+ * Interpreter.iterate()). The threads have the stack of the main
+ * thread (see Aroi.STACK_SIZE), which the workers of a fork/join
+ * pool can't be given. The partial results of the reductions
+ * (see Resolver) of the chunks are combined in the order of the
+ * iterations. Only numbers are reduced: "+" on a string is not
+ * associative, the chunks would add up their own numbers first.
+ *
+ * The loop only returns once no iteration runs anymore. If an
+ * iteration fails, the chunks not started yet are skipped, and
+ * the error of one of the failed iterations is reported.
+ */
+class ParallelLoop {
+    static final int CHUNKS_PER_THREAD = 8;
+
+    // grows with the parallel loops running at once, eg. nested ones
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(null, task, "aroi-parallel", Aroi.STACK_SIZE);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // the partial result of a reduction no iteration has added to
+    static final Object NO_PARTIAL = new Object();
+
+    final Stmt.Parallel stmt;
+    // the counter takes the values start + i * step
+    final double start;
+    final double step;
+    // set by the first chunk that fails
+    volatile boolean failed = false;
+
+    private final Interpreter interpreter;
+
+    ParallelLoop(Interpreter interpreter, Stmt.Parallel stmt, double start, double step) {
+        this.interpreter = interpreter;
+        this.stmt = stmt;
+        this.start = start;
+        this.step = step;
+    }
+
+    /**
+     * The number of values of the counter below the end (or at it, if
+     * inclusive), the division can be off by one either way.
+     */
+    long iterations(double end, boolean inclusive) {
+        return iterations(start, step, end, inclusive);
+    }
+
+    /**
+     * Like iterations(), for any positive step (see Interpreter.visitForInStmt()).
+     */
+    static long iterations(double start, double step, double end, boolean inclusive) {
+        double span = Math.ceil((end - start) / step);
+        long count = span > 0 ? (long) span : 0;
+        while (count > 0 && !within(start + (count - 1) * step, end, inclusive)) count--;
+        while (count < Long.MAX_VALUE && within(start + count * step, end, inclusive)) count++;
+        return count;
+    }
+
+    private static boolean within(double value, double end, boolean inclusive) {
+        return inclusive ? value <= end : value < end;
+    }
+
+    /**
+     * Run the iterations 0 to count, return the partial results.
+     */
+    Object[] run(long count) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (count < 2 || threads < 2) return interpreter.iterate(this, 0, count);
+
+        long size = Math.max(1, count / ((long) threads * CHUNKS_PER_THREAD));
+        Object[][] results = new Object[(int) ((count + size - 1) / size)][];
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        // every thread takes the next chunk until there are none left,
+        // this one too, so a loop in a worker never waits for a worker
+        Runnable worker = () -> {
+            for (int i; !failed && (i = next.getAndIncrement()) < results.length; ) {
+                long from = i * size;
+                try {
+                    results[i] = interpreter.fork().iterate(this, from, Math.min(count, from + size));
+                } catch (RuntimeException e) {
+                    failed = true;
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 1; i < Math.min(threads, results.length); i++) workers.add(WORKERS.submit(worker));
+        worker.run();
+
+        for (Future<?> running : workers) {
+            try {
+                running.get();
+            } catch (InterruptedException e) {
+                failed = true;
+                for (Future<?> other : workers) other.cancel(true);
+                throw new CancellationException("Execution cancelled.");
+            } catch (ExecutionException e) {
+                // the workers catch the errors of the iterations, this is a crash
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        if (failure.get() != null) throw failure.get();
+
+        Object[] partials = results[0];
+        for (int i = 1; i < results.length; i++) partials = combine(partials, results[i]);
+        return partials;
+    }
+
+    private Object[] combine(Object[] left, Object[] right) {
+        List<Expr.Assign> reductions = stmt.reductions;
+        for (int i = 0; i < left.length; i++) {
+            if (right[i] == NO_PARTIAL) continue;
+            if (left[i] == NO_PARTIAL) {
+                left[i] = right[i];
+                continue;
+            }
+            Token operator = ((Expr.Binary) reductions.get(i).value).operator;
+            left[i] = interpreter.binary(operator, left[i], right[i]);
+        }
+        return left;
+    }
+}
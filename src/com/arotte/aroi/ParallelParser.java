@@ -0,0 +1,148 @@
+package com.arotte.aroi;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**ParallelParser.java
+ *
+ * Parses large scripts on all cores, by splitting the tokens
+ * into chunks of whole top-level statements and parsing the
+ * chunks in parallel with fork/join.
+ *
+ * A chunk ends after a ';' or '}' outside of any parentheses
+ * or braces that is not followed by 'else'; such a token can
+ * only end a top-level statement. Chunks are parsed with a
+ * reporter of their own. If any of them has an error, or nests
+ * too deeply for the stack of a fork/join worker, the whole
+ * script is parsed again serially, so that the errors are
+ * reported exactly as by a serial parse.
+ */
+class ParallelParser {
+    // tokens a chunk has at least, unless it is the last one
+    static final int CHUNK_SIZE = 1 << 14;
+
+    static List<Stmt> parse(List<Token> tokens, Reporter reporter) {
+        // splitting costs more than it saves on a single core
+        if (Runtime.getRuntime().availableProcessors() < 2)
+            return new Parser(tokens, reporter).parse();
+
+        List<Integer> bounds = split(tokens);
+        int chunks = bounds.size() - 1;
+        if (chunks < 2) return new Parser(tokens, reporter).parse();
+
+        List<List<Stmt>> parts = new ArrayList<>(Collections.nCopies(chunks, null));
+        ForkJoinPool.commonPool().invoke(new ParseChunks(tokens, bounds, parts, 0, chunks));
+
+        // a chunk with errors has no statements
+        int size = 0;
+        for (List<Stmt> part : parts) {
+            if (part == null) return new Parser(tokens, reporter).parse();
+            size += part.size();
+        }
+
+        List<Stmt> statements = new ArrayList<>(size);
+        for (List<Stmt> part : parts) statements.addAll(part);
+        return statements;
+    }
+
+    /**
+     * Find where chunks start, the last bound is the index of EOF.
+     */
+    static List<Integer> split(List<Token> tokens) {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+
+        int depth = 0;
+        int last = tokens.size() - 1;
+        for (int i = 0; i < last; i++) {
+            switch (tokens.get(i).type) {
+                case LEFT_PAREN, LEFT_BRACE -> depth++;
+                case RIGHT_PAREN -> depth--;
+                case RIGHT_BRACE -> {
+                    if (--depth == 0) bound(tokens, bounds, i);
+                }
+                case SEMICOLON -> {
+                    if (depth == 0) bound(tokens, bounds, i);
+                }
+            }
+        }
+
+        bounds.add(last);
+        return bounds;
+    }
+
+    private static void bound(List<Token> tokens, List<Integer> bounds, int end) {
+        int start = end + 1;
+        if (start - bounds.get(bounds.size() - 1) < CHUNK_SIZE) return;
+        if (tokens.get(start).type == TokenType.ELSE) return;
+        if (start == tokens.size() - 1) return;
+        bounds.add(start);
+    }
+
+    private static class ParseChunks extends RecursiveAction {
+        private final List<Token> tokens;
+        private final List<Integer> bounds;
+        private final List<List<Stmt>> parts;
+        private final int from, to;
+
+        ParseChunks(List<Token> tokens, List<Integer> bounds, List<List<Stmt>> parts, int from, int to) {
+            this.tokens = tokens;
+            this.bounds = bounds;
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseChunks(tokens, bounds, parts, from, middle),
+                          new ParseChunks(tokens, bounds, parts, middle, to));
+                return;
+            }
+
+            Reporter reporter = new Reporter(new PrintStream(OutputStream.nullOutputStream()));
+            Chunk chunk = new Chunk(tokens, bounds.get(from), bounds.get(to));
+            try {
+                List<Stmt> statements = new Parser(chunk, reporter).parse();
+                parts.set(from, reporter.hadError ? null : statements);
+            } catch (StackOverflowError e) {
+                // the workers have a small stack, the calling thread
+                // parses deeply nested code again serially
+                parts.set(from, null);
+            }
+        }
+    }
+
+    // the tokens of a chunk, followed by an EOF
+    private static class Chunk extends AbstractList<Token> {
+        private final List<Token> tokens;
+        private final int start;
+        private final int size;
+        private final Token eof;
+
+        Chunk(List<Token> tokens, int start, int end) {
+            this.tokens = tokens;
+            this.start = start;
+            this.size = end - start;
+            this.eof = new Token(TokenType.EOF, "", null, tokens.get(end).line);
+        }
+
+        @Override
+        public Token get(int index) {
+            return index < size ? tokens.get(start + index) : eof;
+        }
+
+        @Override
+        public int size() {
+            return size + 1;
+        }
+    }
+}
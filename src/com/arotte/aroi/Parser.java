@@ -2,39 +2,121 @@ package com.arotte.aroi;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**Parser.java
  *
  * This class parses the list of scanned tokens,
  * and constructs the Abstract Syntax Tree structure.
  *
- * Uses Recursive Descent Parsing.
+ * Uses Recursive Descent Parsing for statements,
+ * and operator-precedence parsing for expressions.
+ *
+ * In lazy mode the bodies of blocks are only checked by a
+ * recognizer that builds no nodes, and are parsed in full
+ * the first time the interpreter reads their statements.
  */
 public class Parser {
     private static class ParseError extends RuntimeException {}
 
+    // thrown by the recognizer, and by error() in lazy mode,
+    // to fall back to an eager parse that reports the errors
+    private static class Invalid extends RuntimeException {
+        Invalid() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Invalid INVALID = new Invalid();
+
     private final List<Token> tokens;
+    private final Reporter reporter;
     private int current = 0;
 
-    public Parser(List<Token> tokens) {
+    // --lazy: defer parsing the bodies of blocks
+    private boolean lazy = false;
+    // the tokens were already accepted by the recognizer
+    private boolean checked = false;
+    // index of the matching '}' of every '{' the recognizer has seen
+    private int[] closing = null;
+    // functions around the current token, return is only allowed inside one
+    private int functionDepth = 0;
+    // the innermost function is an "init" method, which returns no value
+    private boolean initializer = false;
+    // the innermost class around the current token, for "this" and "super"
+    private int classType = NO_CLASS;
+    // a parallel loop is around the current token, in the innermost function
+    private boolean parallel = false;
+
+    private static final int NO_CLASS = 0;
+    private static final int CLASS = 1;
+    private static final int SUBCLASS = 2;
+
+    public Parser(List<Token> tokens, Reporter reporter) {
         this.tokens = tokens;
+        this.reporter = reporter;
+    }
+
+    /**
+     * Parse the bodies of blocks only when they are first executed.
+     * Syntax errors are still reported by parse().
+     */
+    void setLazy(boolean lazy) {
+        this.lazy = lazy;
     }
 
     List<Stmt> parse() {
+        if (lazy && !checked) {
+            closing = new int[tokens.size()];
+            try {
+                List<Stmt> statements = new ArrayList<>();
+                while (!isAtEnd()) statements.add(declaration());
+                return statements;
+            } catch (Invalid invalid) {
+                // start over eagerly, to report the errors exactly as usual
+                current = 0;
+                lazy = false;
+            }
+        }
+
         List<Stmt> statements = new ArrayList<>();
         while (!isAtEnd()) statements.add(declaration());
 
         return statements;
     }
 
+    /**
+     * Parse statement by statement, handing every top-level
+     * statement to the consumer as soon as it is complete.
+     * Statements with syntax errors are handed over as null.
+     * Blocks are never deferred.
+     */
+    void parse(Consumer<Stmt> consumer) {
+        lazy = false;
+        while (!isAtEnd()) consumer.accept(declaration());
+    }
+
+    /**
+     * The line of the token being parsed, eg. where the parser failed.
+     */
+    int line() {
+        return tokens.get(current).line;
+    }
+
     // =====================================================
     // rules
 
     private Stmt declaration() {
         try {
+            if (match(TokenType.CLASS)) return classDeclaration();
+            if (match(TokenType.FUN)) return function("function");
+            if (match(TokenType.MEMO)) return memoDeclaration();
             if (match(TokenType.VAR)) return varDeclaration();
 
             return statement();
@@ -44,6 +126,87 @@ public class Parser {
         }
     }
 
+    private Stmt classDeclaration() {
+        Token name = consume(TokenType.IDENTIFIER, "Expect class name.");
+
+        Expr.Variable superclass = null;
+        if (match(TokenType.LESS)) {
+            consume(TokenType.IDENTIFIER, "Expect superclass name.");
+            superclass = new Expr.Variable(previous());
+            if (previous().lexeme.equals(name.lexeme))
+                error(previous(), "A class can't inherit from itself.");
+        }
+        consume(TokenType.LEFT_BRACE, "Expect '{' before class body.");
+
+        List<Stmt.Function> methods = new ArrayList<>();
+        int enclosingClass = classType;
+        classType = superclass == null ? CLASS : SUBCLASS;
+        try {
+            while (!check(TokenType.RIGHT_BRACE) && !isAtEnd())
+                methods.add(function("method"));
+        } finally {
+            classType = enclosingClass;
+        }
+        consume(TokenType.RIGHT_BRACE, "Expect '}' after class body.");
+
+        return at(name.line, new Stmt.Class(name, superclass, methods));
+    }
+
+    private Stmt.Function function(String kind) {
+        Token name = consume(TokenType.IDENTIFIER, "Expect " + kind + " name.");
+        consume(TokenType.LEFT_PAREN, "Expect '(' after " + kind + " name.");
+
+        List<Token> parameters = new ArrayList<>();
+        if (!check(TokenType.RIGHT_PAREN)) {
+            do {
+                // the error is not thrown, the parser is not confused
+                if (parameters.size() >= 255)
+                    error(peek(), "Can't have more than 255 parameters.");
+                parameters.add(consume(TokenType.IDENTIFIER, "Expect parameter name."));
+            } while (match(TokenType.COMMA));
+        }
+        consume(TokenType.RIGHT_PAREN, "Expect ')' after parameters.");
+        consume(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
+
+        List<Stmt> body = functionBody(kind.equals("method") && name.lexeme.equals("init"));
+        return at(name.line, new Stmt.Function(name, parameters, body));
+    }
+
+    private Stmt memoDeclaration() {
+        // a function whose results are cached, by default up to
+        // MemoCache.CAPACITY of them
+        int capacity = MemoCache.CAPACITY;
+        if (match(TokenType.LEFT_PAREN)) {
+            Token size = consume(TokenType.NUMBER, "Expect capacity after '('.");
+            double value = (double) size.literal;
+            if (value < 1 || value != (int) value)
+                error(size, "Capacity must be a positive integer.");
+            else
+                capacity = (int) value;
+            consume(TokenType.RIGHT_PAREN, "Expect ')' after capacity.");
+        }
+        consume(TokenType.FUN, "Expect 'fun' after 'memo'.");
+
+        Stmt.Function function = function("function");
+        function.memo = capacity;
+        return function;
+    }
+
+    private List<Stmt> functionBody(boolean isInitializer) {
+        boolean enclosingInitializer = initializer;
+        boolean enclosingParallel = parallel;
+        functionDepth++;
+        initializer = isInitializer;
+        parallel = false;
+        try {
+            return lazy ? deferredBlock() : block();
+        } finally {
+            functionDepth--;
+            initializer = enclosingInitializer;
+            parallel = enclosingParallel;
+        }
+    }
+
     private Stmt varDeclaration() {
         Token variableName = consume(TokenType.IDENTIFIER, "Expect variable name.");
 
@@ -52,17 +215,23 @@ public class Parser {
             initializer = expression();
 
         consume(TokenType.SEMICOLON, "Expect ';' after variable declaration.");
-        return new Stmt.Var(variableName, initializer);
+        return at(variableName.line, new Stmt.Var(variableName, initializer));
     }
 
     private Stmt statement() {
-        if (match(TokenType.IF)) return ifStatement();
-        if (match(TokenType.PRINT)) return printStatement();
-        if (match(TokenType.WHILE)) return whileStatement();
-        if (match(TokenType.FOR)) return forStatement();
-        if (match(TokenType.LEFT_BRACE)) return new Stmt.Block(block());
-
-        return expressionStatement();
+        // remember the line the statement starts on
+        int line = peek().line;
+
+        if (match(TokenType.IF)) return at(line, ifStatement());
+        if (match(TokenType.PRINT)) return at(line, printStatement());
+        if (match(TokenType.RETURN)) return at(line, returnStatement());
+        if (match(TokenType.WHILE)) return at(line, whileStatement());
+        if (match(TokenType.FOR)) return at(line, forStatement());
+        if (match(TokenType.PARALLEL)) return at(line, parallelStatement());
+        if (match(TokenType.SPAWN)) return at(line, spawnStatement());
+        if (match(TokenType.LEFT_BRACE)) return at(line, new Stmt.Block(lazy ? deferredBlock() : block()));
+
+        return at(line, expressionStatement());
     }
 
     private Stmt ifStatement() {
@@ -78,12 +247,40 @@ public class Parser {
         return new Stmt.If(condition, thenBranch, elseBranch);
     }
 
+    private Stmt spawnStatement() {
+        Token keyword = previous();
+        consume(TokenType.LEFT_BRACE, "Expect '{' after 'spawn'.");
+
+        // the block is the body of a function without parameters,
+        // which the task calls
+        Stmt.Function body = at(keyword.line, new Stmt.Function(keyword, new ArrayList<>(), functionBody(false)));
+        return new Stmt.Spawn(keyword, body);
+    }
+
     private Stmt printStatement() {
         Expr value = expression();
         consume(TokenType.SEMICOLON, "Expected ';' after value.");
         return new Stmt.Print(value);
     }
 
+    private Stmt returnStatement() {
+        Token keyword = previous();
+        if (functionDepth == 0)
+            error(keyword, "Can't return from top-level code.");
+        else if (parallel)
+            error(keyword, "Can't return from a parallel loop.");
+
+        Expr value = null;
+        if (!check(TokenType.SEMICOLON)) {
+            if (initializer)
+                error(keyword, "Can't return a value from an initializer.");
+            value = expression();
+        }
+
+        consume(TokenType.SEMICOLON, "Expect ';' after return value.");
+        return new Stmt.Return(keyword, value);
+    }
+
     private Stmt whileStatement() {
         consume(TokenType.LEFT_PAREN, "Expect '(' after while.");
         Expr condition = expression();
@@ -94,7 +291,10 @@ public class Parser {
     }
 
     private Stmt forStatement() {
+        Token keyword = previous();
+        int line = keyword.line;
         consume(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
+        if (isRange()) return rangeStatement(keyword);
 
         // initializer of the for
         Stmt initializer;
@@ -122,25 +322,102 @@ public class Parser {
         Stmt body = statement();
 
         // add increment expression after the body
+        // the desugared statements are attributed to the line of the 'for'
         if (increment != null) {
-            body = new Stmt.Block(Arrays.asList(
+            body = at(line, new Stmt.Block(Arrays.asList(
                     body,
-                    new Stmt.Expression(increment)
-            ));
+                    at(line, new Stmt.Expression(increment))
+            )));
         }
 
         // if condition is empty, it is true by default
         if (condition == null) condition = new Expr.Literal(true);
         // add condition statement in front of the body
-        body = new Stmt.While(condition, body);
+        body = at(line, new Stmt.While(condition, body));
 
         // add the initializer before the body
         if (initializer != null)
-            body = new Stmt.Block(Arrays.asList(initializer, body));
+            body = at(line, new Stmt.Block(Arrays.asList(initializer, body)));
 
         return body;
     }
 
+    private boolean isRange() {
+        // "in" and "step" are only words of a range, not keywords
+        return check(TokenType.VAR) && tokens.get(current + 1).type == TokenType.IDENTIFIER
+                && isWord(tokens.get(current + 2), "in");
+    }
+
+    private static boolean isWord(Token token, String word) {
+        return token.type == TokenType.IDENTIFIER && token.lexeme.equals(word);
+    }
+
+    private Stmt rangeStatement(Token keyword) {
+        // for (var i in a..b step c), with its own node
+        advance();
+        Token name = consume(TokenType.IDENTIFIER, "Expect variable name.");
+        advance();
+        Expr start = expression();
+        consume(TokenType.DOT_DOT, "Expect '..' after start of range.");
+        Expr end = expression();
+
+        Expr step = null;
+        if (isWord(peek(), "step")) {
+            advance();
+            step = expression();
+        }
+        consume(TokenType.RIGHT_PAREN, "Expect ')' after range.");
+
+        Stmt.Var counter = at(name.line, new Stmt.Var(name, start));
+        return new Stmt.ForIn(keyword, counter, end, step, statement());
+    }
+
+    private static final String PARALLEL_FORM =
+            "Expect a parallel loop of the form 'parallel for (var i = a; i < b; i = i + c)'.";
+
+    private Stmt parallelStatement() {
+        // unlike for, it has a node of its own: the iterations are
+        // counted up front, to be split between threads, so the
+        // clauses are restricted to a counter stepping to a bound
+        Token keyword = previous();
+        consume(TokenType.FOR, PARALLEL_FORM);
+        consume(TokenType.LEFT_PAREN, PARALLEL_FORM);
+        consume(TokenType.VAR, PARALLEL_FORM);
+        Token name = consume(TokenType.IDENTIFIER, PARALLEL_FORM);
+        consume(TokenType.EQUAL, PARALLEL_FORM);
+        Stmt.Var counter = at(name.line, new Stmt.Var(name, expression()));
+        consume(TokenType.SEMICOLON, PARALLEL_FORM);
+
+        counter(name);
+        if (!match(TokenType.LESS, TokenType.LESS_EQUAL)) throw error(peek(), PARALLEL_FORM);
+        Token comparison = previous();
+        Expr end = expression();
+        consume(TokenType.SEMICOLON, PARALLEL_FORM);
+
+        counter(name);
+        consume(TokenType.EQUAL, PARALLEL_FORM);
+        counter(name);
+        consume(TokenType.PLUS, PARALLEL_FORM);
+        Expr step = expression();
+        consume(TokenType.RIGHT_PAREN, PARALLEL_FORM);
+
+        Stmt body;
+        boolean enclosingParallel = parallel;
+        parallel = true;
+        try {
+            body = statement();
+        } finally {
+            parallel = enclosingParallel;
+        }
+
+        return new Stmt.Parallel(keyword, counter, comparison, end, step, body);
+    }
+
+    private void counter(Token name) {
+        Token token = consume(TokenType.IDENTIFIER, PARALLEL_FORM);
+        if (!token.lexeme.equals(name.lexeme)) throw error(token, PARALLEL_FORM);
+    }
+
     private Stmt expressionStatement() {
         Expr expr = expression();
         consume(TokenType.SEMICOLON, "Expected ';' after expression.");
@@ -148,115 +425,331 @@ public class Parser {
     }
 
     private List<Stmt> block() {
+        // Directly nested blocks ("{ { ... } }") are parsed with an
+        // explicit stack instead of recursion, so that their depth
+        // is not limited by the Java stack. Errors are recovered from
+        // the same way as if each block were parsed by declaration().
         List<Stmt> statements = new ArrayList<>();
+        Deque<List<Stmt>> enclosing = new ArrayDeque<>();
+        Deque<Integer> lines = new ArrayDeque<>();
+
+        for (;;) {
+            while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
+                if (check(TokenType.LEFT_BRACE)) {
+                    lines.push(advance().line);
+                    enclosing.push(statements);
+                    statements = new ArrayList<>();
+                } else {
+                    statements.add(declaration());
+                }
+            }
 
-        while (!check(TokenType.RIGHT_BRACE) && !isAtEnd())
-            statements.add(declaration());
+            if (enclosing.isEmpty()) break;
+
+            // close a nested block
+            try {
+                consume(TokenType.RIGHT_BRACE, "Expect closing '}' after block.");
+                Stmt block = at(lines.pop(), new Stmt.Block(statements));
+                statements = enclosing.pop();
+                statements.add(block);
+            } catch (ParseError error) {
+                synchronize();
+                lines.pop();
+                statements = enclosing.pop();
+                statements.add(null);
+            }
+        }
 
         consume(TokenType.RIGHT_BRACE, "Expect closing '}' after block.");
         return statements;
     }
 
-    private Expr expression() {
-        return assignment();
+    private List<Stmt> deferredBlock() {
+        // the opening brace is already consumed
+        int start = current;
+        if (checked) current = closing[start - 1] + 1;
+        else skipBlock();
+
+        return new DeferredBlock(this, start);
     }
 
-    private Expr assignment() {
-        // parse the left-hand side as if it were an expression
-        Expr expr = or();
+    /**
+     * Whether the statements of a block were deferred by a lazy
+     * parse, and have not been parsed yet.
+     */
+    static boolean isUnparsed(List<Stmt> statements) {
+        return statements instanceof DeferredBlock && ((DeferredBlock) statements).statements == null;
+    }
 
-        if (match(TokenType.EQUAL)) {
-            Token equals = previous();
-            // recursively parse the right-hand side
-            Expr value = assignment();
+    // the statements of a block, parsed on first access
+    private static class DeferredBlock extends AbstractList<Stmt> {
+        private final List<Token> tokens;
+        private final Reporter reporter;
+        private final int[] closing;
+        private final int start;
+        // where the block is, for return, "this" and "super"
+        private final int functionDepth;
+        private final boolean initializer;
+        private final int classType;
+        private final boolean parallel;
+        private volatile List<Stmt> statements = null;
+
+        DeferredBlock(Parser parser, int start) {
+            this.tokens = parser.tokens;
+            this.reporter = parser.reporter;
+            this.closing = parser.closing;
+            this.start = start;
+            this.functionDepth = parser.functionDepth;
+            this.initializer = parser.initializer;
+            this.classType = parser.classType;
+            this.parallel = parser.parallel;
+        }
 
-            if (expr instanceof Expr.Variable) {
-                Token name = ((Expr.Variable)expr).name;
-                return new Expr.Assign(name, value);
+        private List<Stmt> statements() {
+            List<Stmt> result = statements;
+            if (result != null) return result;
+
+            synchronized (this) {
+                if (statements == null) {
+                    Parser parser = new Parser(tokens, reporter);
+                    parser.lazy = true;
+                    parser.checked = true;
+                    parser.closing = closing;
+                    parser.current = start;
+                    parser.functionDepth = functionDepth;
+                    parser.initializer = initializer;
+                    parser.classType = classType;
+                    parser.parallel = parallel;
+
+                    int end = closing[start - 1];
+                    List<Stmt> parsed = new ArrayList<>();
+                    while (parser.current < end) parsed.add(parser.declaration());
+                    statements = parsed;
+                }
+                return statements;
             }
+        }
 
-            // the error is not thrown because the parser is not in panic mode
-            error(equals, "Invalid assignment target.");
+        @Override
+        public Stmt get(int index) {
+            return statements().get(index);
         }
 
-        return expr;
+        @Override
+        public int size() {
+            return statements().size();
+        }
     }
 
-    private Expr or() {
-        Expr expr = and();
-
-        while (match(TokenType.OR)) {
-            Token operator = previous();
-            Expr right = and();
-            expr = new Expr.Logical(expr, operator, right);
+    // precedence of the operators, from the loosest to the tightest binding,
+    // same as the levels of the grammar from assignment to unary
+    private static final int GROUPING = 0;
+    private static final int ASSIGNMENT = 1;
+    private static final int LOGIC_OR = 2;
+    private static final int LOGIC_AND = 3;
+    private static final int EQUALITY = 4;
+    private static final int COMPARISON = 5;
+    private static final int TERM = 6;
+    private static final int FACTOR = 7;
+    private static final int UNARY = 8;
+
+    // an operator (or an opening parenthesis) waiting for its right operand
+    private static class Pending {
+        final Token operator;
+        final int precedence;
+
+        Pending(Token operator, int precedence) {
+            this.operator = operator;
+            this.precedence = precedence;
         }
-
-        return expr;
     }
 
-    private Expr and() {
-        Expr expr = equality();
+    private Expr expression() {
+        // Operator-precedence parsing with explicit stacks, instead of
+        // one recursive call per level of the grammar. Expressions can
+        // be arbitrarily long or deeply nested without overflowing the
+        // Java stack, and the resulting AST is the same as with recursive
+        // descent: binary operators are left-associative, assignment is
+        // right-associative.
+        List<Expr> operands = new ArrayList<>();
+        List<Pending> operators = new ArrayList<>();
+        int groupings = 0;
+
+        for (;;) {
+            // prefix operators and opening parentheses
+            for (;;) {
+                if (match(TokenType.BANG, TokenType.MINUS, TokenType.PLUS_PLUS, TokenType.MINUS_MINUS)) {
+                    operators.add(new Pending(previous(), UNARY));
+                } else if (match(TokenType.LEFT_PAREN)) {
+                    operators.add(new Pending(previous(), GROUPING));
+                    groupings++;
+                } else {
+                    break;
+                }
+            }
+
+            operands.add(postfix(calls(primary())));
+
+            // closing parentheses of the groupings opened in this expression
+            while (groupings > 0 && match(TokenType.RIGHT_PAREN)) {
+                reduce(operands, operators, ASSIGNMENT);
+                operators.remove(operators.size() - 1);
+                groupings--;
+                operands.add(postfix(calls(new Expr.Grouping(pop(operands)))));
+            }
+
+            int precedence = precedence(peek().type);
+            if (precedence < 0) break;
 
-        while (match(TokenType.AND)) {
-            Token operator = previous();
-            Expr right = equality();
-            expr = new Expr.Logical(expr, operator, right);
+            // assignment is right-associative, everything else left-associative
+            reduce(operands, operators, precedence == ASSIGNMENT ? precedence + 1 : precedence);
+            operators.add(new Pending(advance(), precedence));
         }
 
-        return expr;
+        reduce(operands, operators, ASSIGNMENT);
+        if (groupings > 0)
+            throw error(peek(), "Expected closing ')' after expression.");
+
+        return pop(operands);
     }
 
-    private Expr equality() {
-        Expr expr = comparison();
-        while (match(TokenType.EQUAL_EQUAL, TokenType.BANG_EQUAL)) {
-            Token operator = previous();
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
+    private void reduce(List<Expr> operands, List<Pending> operators, int minPrecedence) {
+        // combine the operators on top of the stack that bind
+        // at least as tightly as minPrecedence with their operands
+        while (!operators.isEmpty()
+                && operators.get(operators.size() - 1).precedence >= minPrecedence) {
+            Pending pending = operators.remove(operators.size() - 1);
+            Expr right = pop(operands);
+
+            if (pending.precedence == UNARY) {
+                TokenType type = pending.operator.type;
+                if (type == TokenType.PLUS_PLUS || type == TokenType.MINUS_MINUS)
+                    operands.add(update(right, pending.operator, new Expr.Literal(1.0), false));
+                else
+                    operands.add(new Expr.Unary(pending.operator, right));
+            } else {
+                Expr left = pop(operands);
+                operands.add(combine(left, pending.operator, right));
+            }
         }
-        return expr;
     }
 
-    private Expr comparison() {
-        Expr expr = term();
-        while (match(TokenType.GREATER, TokenType.GREATER_EQUAL,
-                     TokenType.LESS,    TokenType.LESS_EQUAL)) {
-            Token operator = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
+    private Expr combine(Expr left, Token operator, Expr right) {
+        switch (operator.type) {
+            case EQUAL -> {
+                if (left instanceof Expr.Variable && ((Expr.Variable) left).name.type == TokenType.IDENTIFIER) {
+                    Token name = ((Expr.Variable)left).name;
+                    return new Expr.Assign(name, right);
+                }
+                if (left instanceof Expr.Get) {
+                    Expr.Get get = (Expr.Get) left;
+                    return new Expr.Set(get.object, get.name, right);
+                }
+                if (left instanceof Expr.Index) {
+                    Expr.Index index = (Expr.Index) left;
+                    return new Expr.IndexSet(index.object, index.bracket, index.index, right);
+                }
+
+                // the error is not thrown because the parser is not in panic mode
+                error(operator, "Invalid assignment target.");
+                return left;
+            }
+            case PLUS_EQUAL, MINUS_EQUAL, STAR_EQUAL, SLASH_EQUAL -> {
+                return update(left, operator, right, false);
+            }
+            case OR, AND -> {
+                return new Expr.Logical(left, operator, right);
+            }
+            default -> {
+                return new Expr.Binary(left, operator, right);
+            }
         }
-        return expr;
     }
 
-    private Expr term() {
-        Expr expr = factor();
-        while (match(TokenType.MINUS, TokenType.PLUS)) {
-            Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
+    private Expr postfix(Expr operand) {
+        if (!match(TokenType.PLUS_PLUS, TokenType.MINUS_MINUS)) return operand;
+        return update(operand, previous(), new Expr.Literal(1.0), true);
     }
 
-    private Expr factor() {
-        Expr expr = unary();
-        while (match(TokenType.SLASH, TokenType.STAR)) {
-            Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+    private Expr update(Expr target, Token operator, Expr value, boolean postfix) {
+        // "x += e", "++x" and "x++" update their target in place, with
+        // the arithmetic operator under the lexeme of the source
+        TokenType type = switch (operator.type) {
+            case PLUS_EQUAL, PLUS_PLUS -> TokenType.PLUS;
+            case MINUS_EQUAL, MINUS_MINUS -> TokenType.MINUS;
+            case STAR_EQUAL -> TokenType.STAR;
+            default -> TokenType.SLASH;
+        };
+        Token arithmetic = new Token(type, operator.lexeme, null, operator.line);
+
+        if (target instanceof Expr.Variable && ((Expr.Variable) target).name.type == TokenType.IDENTIFIER)
+            return new Expr.Update(((Expr.Variable) target).name, arithmetic, value, postfix);
+        if (target instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) target;
+            return new Expr.UpdateField(get.object, get.name, arithmetic, value, postfix);
         }
-        return expr;
+        if (target instanceof Expr.Index) {
+            Expr.Index index = (Expr.Index) target;
+            return new Expr.UpdateIndex(index.object, index.bracket, arithmetic, index.index, value, postfix);
+        }
+
+        // the error is not thrown because the parser is not in panic mode
+        error(operator, "Invalid assignment target.");
+        return target;
     }
 
-    private Expr unary() {
-        if (match(TokenType.BANG, TokenType.MINUS)) {
-            Token operator = previous();
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
+    private int precedence(TokenType type) {
+        // precedence of a binary operator, -1 if the token is not one
+        return switch (type) {
+            case EQUAL, PLUS_EQUAL, MINUS_EQUAL, STAR_EQUAL, SLASH_EQUAL -> ASSIGNMENT;
+            case OR -> LOGIC_OR;
+            case AND -> LOGIC_AND;
+            case EQUAL_EQUAL, BANG_EQUAL -> EQUALITY;
+            case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> COMPARISON;
+            case MINUS, PLUS -> TERM;
+            case SLASH, STAR -> FACTOR;
+            default -> -1;
+        };
+    }
+
+    private Expr calls(Expr callee) {
+        // call, property and index suffixes bind tighter than any operator
+        for (;;) {
+            if (match(TokenType.DOT)) {
+                Token name = consume(TokenType.IDENTIFIER, "Expect property name after '.'.");
+                callee = new Expr.Get(callee, name);
+                continue;
+            }
+            if (match(TokenType.LEFT_BRACKET)) {
+                Expr index = expression();
+                Token bracket = consume(TokenType.RIGHT_BRACKET, "Expect ']' after index.");
+                callee = new Expr.Index(callee, bracket, index);
+                continue;
+            }
+            if (!match(TokenType.LEFT_PAREN)) break;
+
+            List<Expr> arguments = new ArrayList<>();
+            if (!check(TokenType.RIGHT_PAREN)) {
+                do {
+                    if (arguments.size() >= 255)
+                        error(peek(), "Can't have more than 255 arguments.");
+                    arguments.add(expression());
+                } while (match(TokenType.COMMA));
+            }
+
+            Token paren = consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments.");
+            callee = new Expr.Call(callee, paren, arguments);
         }
-        return primary();
+
+        return callee;
+    }
+
+    private static Expr pop(List<Expr> operands) {
+        return operands.remove(operands.size() - 1);
     }
 
     private Expr primary() {
+        // groupings and unary operators are handled by expression()
         if (match(TokenType.TRUE)) return new Expr.Literal(true);
         if (match(TokenType.FALSE)) return new Expr.Literal(false);
         if (match(TokenType.NIL)) return new Expr.Literal(null);
@@ -266,22 +759,385 @@ public class Parser {
             return new Expr.Literal(previous().literal);
         }
 
-        // grouping
-        if (match(TokenType.LEFT_PAREN)) {
-            // consume the expression inside "( )"
-            Expr expr = expression();
-            // consume the right ")"
-            consume(TokenType.RIGHT_PAREN, "Expected closing ')' after expression.");
-            return new Expr.Grouping(expr);
-        }
-
         // variable identifier
         if (match(TokenType.IDENTIFIER))
             return new Expr.Variable(previous());
 
+        // an array, or a map if its first element is followed by ':'
+        if (match(TokenType.LEFT_BRACKET)) {
+            if (match(TokenType.COLON)) {
+                Token bracket = consume(TokenType.RIGHT_BRACKET, "Expect ']' after ':' of an empty map.");
+                return new Expr.Map(bracket, new ArrayList<>(), new ArrayList<>());
+            }
+
+            List<Expr> elements = new ArrayList<>();
+            List<Expr> values = null;
+            if (!check(TokenType.RIGHT_BRACKET)) {
+                elements.add(expression());
+                if (match(TokenType.COLON)) {
+                    values = new ArrayList<>();
+                    values.add(expression());
+                }
+                while (match(TokenType.COMMA)) {
+                    elements.add(expression());
+                    if (values != null) {
+                        consume(TokenType.COLON, "Expect ':' after map key.");
+                        values.add(expression());
+                    }
+                }
+            }
+
+            if (values == null) {
+                Token bracket = consume(TokenType.RIGHT_BRACKET, "Expect ']' after array elements.");
+                return new Expr.Array(bracket, elements);
+            }
+            Token bracket = consume(TokenType.RIGHT_BRACKET, "Expect ']' after map entries.");
+            return new Expr.Map(bracket, elements, values);
+        }
+
+        // "this" is read like a variable, the hidden parameter of methods
+        if (match(TokenType.THIS)) {
+            if (classType == NO_CLASS)
+                error(previous(), "Can't use 'this' outside of a class.");
+            return new Expr.Variable(previous());
+        }
+
+        if (match(TokenType.SUPER)) {
+            Token keyword = previous();
+            if (classType == NO_CLASS)
+                error(keyword, "Can't use 'super' outside of a class.");
+            else if (classType == CLASS)
+                error(keyword, "Can't use 'super' in a class with no superclass.");
+
+            consume(TokenType.DOT, "Expect '.' after 'super'.");
+            Token method = consume(TokenType.IDENTIFIER, "Expect superclass method name.");
+            Token receiver = new Token(TokenType.THIS, "this", null, keyword.line);
+            return new Expr.Super(keyword, method, new Expr.Variable(receiver));
+        }
+
         throw error(peek(), "No expected expression found.");
     }
     
+    // =====================================================
+    // recognizer
+    //
+    // Mirrors the rules above without building nodes. It only
+    // tells whether the tokens are valid: on the first error it
+    // throws INVALID, and parse() starts over eagerly.
+
+    private void skipDeclaration() {
+        if (match(TokenType.CLASS)) {
+            skipClass();
+        } else if (match(TokenType.FUN)) {
+            skipFunction(false);
+        } else if (match(TokenType.MEMO)) {
+            if (match(TokenType.LEFT_PAREN)) {
+                double capacity = (double) expect(TokenType.NUMBER).literal;
+                if (capacity < 1 || capacity != (int) capacity) throw INVALID;
+                expect(TokenType.RIGHT_PAREN);
+            }
+            expect(TokenType.FUN);
+            skipFunction(false);
+        } else if (match(TokenType.VAR)) {
+            skipVarDeclaration();
+        } else {
+            skipStatement();
+        }
+    }
+
+    private void skipClass() {
+        Token name = expect(TokenType.IDENTIFIER);
+        boolean subclass = match(TokenType.LESS);
+        if (subclass && expect(TokenType.IDENTIFIER).lexeme.equals(name.lexeme)) throw INVALID;
+        expect(TokenType.LEFT_BRACE);
+
+        int enclosingClass = classType;
+        classType = subclass ? SUBCLASS : CLASS;
+        try {
+            while (!check(TokenType.RIGHT_BRACE) && !isAtEnd())
+                skipFunction(true);
+        } finally {
+            classType = enclosingClass;
+        }
+        expect(TokenType.RIGHT_BRACE);
+    }
+
+    private void skipFunction(boolean method) {
+        Token name = expect(TokenType.IDENTIFIER);
+        expect(TokenType.LEFT_PAREN);
+        int parameters = 0;
+        if (!check(TokenType.RIGHT_PAREN)) {
+            do {
+                if (++parameters > 255) throw INVALID;
+                expect(TokenType.IDENTIFIER);
+            } while (match(TokenType.COMMA));
+        }
+        expect(TokenType.RIGHT_PAREN);
+        expect(TokenType.LEFT_BRACE);
+        skipFunctionBody(method && name.lexeme.equals("init"));
+    }
+
+    private void skipFunctionBody(boolean isInitializer) {
+        boolean enclosingInitializer = initializer;
+        boolean enclosingParallel = parallel;
+        functionDepth++;
+        initializer = isInitializer;
+        parallel = false;
+        try {
+            skipBlock();
+        } finally {
+            functionDepth--;
+            initializer = enclosingInitializer;
+            parallel = enclosingParallel;
+        }
+    }
+
+    private void skipVarDeclaration() {
+        expect(TokenType.IDENTIFIER);
+        if (match(TokenType.EQUAL)) skipExpression();
+        expect(TokenType.SEMICOLON);
+    }
+
+    private void skipStatement() {
+        if (match(TokenType.IF)) {
+            expect(TokenType.LEFT_PAREN);
+            skipExpression();
+            expect(TokenType.RIGHT_PAREN);
+            skipStatement();
+            if (match(TokenType.ELSE)) skipStatement();
+        } else if (match(TokenType.WHILE)) {
+            expect(TokenType.LEFT_PAREN);
+            skipExpression();
+            expect(TokenType.RIGHT_PAREN);
+            skipStatement();
+        } else if (match(TokenType.FOR)) {
+            expect(TokenType.LEFT_PAREN);
+            if (isRange()) {
+                skipRange();
+            } else {
+                if (match(TokenType.VAR)) {
+                    skipVarDeclaration();
+                } else if (!match(TokenType.SEMICOLON)) {
+                    skipExpression();
+                    expect(TokenType.SEMICOLON);
+                }
+                if (!check(TokenType.SEMICOLON)) skipExpression();
+                expect(TokenType.SEMICOLON);
+                if (!check(TokenType.RIGHT_PAREN)) skipExpression();
+                expect(TokenType.RIGHT_PAREN);
+            }
+            skipStatement();
+        } else if (match(TokenType.PARALLEL)) {
+            expect(TokenType.FOR);
+            expect(TokenType.LEFT_PAREN);
+            expect(TokenType.VAR);
+            String name = expect(TokenType.IDENTIFIER).lexeme;
+            expect(TokenType.EQUAL);
+            skipExpression();
+            expect(TokenType.SEMICOLON);
+            skipCounter(name);
+            if (!match(TokenType.LESS, TokenType.LESS_EQUAL)) throw INVALID;
+            skipExpression();
+            expect(TokenType.SEMICOLON);
+            skipCounter(name);
+            expect(TokenType.EQUAL);
+            skipCounter(name);
+            expect(TokenType.PLUS);
+            skipExpression();
+            expect(TokenType.RIGHT_PAREN);
+
+            boolean enclosingParallel = parallel;
+            parallel = true;
+            try {
+                skipStatement();
+            } finally {
+                parallel = enclosingParallel;
+            }
+        } else if (match(TokenType.SPAWN)) {
+            expect(TokenType.LEFT_BRACE);
+            skipFunctionBody(false);
+        } else if (match(TokenType.LEFT_BRACE)) {
+            skipBlock();
+        } else if (match(TokenType.RETURN)) {
+            if (functionDepth == 0 || parallel) throw INVALID;
+            if (!check(TokenType.SEMICOLON)) {
+                if (initializer) throw INVALID;
+                skipExpression();
+            }
+            expect(TokenType.SEMICOLON);
+        } else {
+            // print and expression statements
+            match(TokenType.PRINT);
+            skipExpression();
+            expect(TokenType.SEMICOLON);
+        }
+    }
+
+    private void skipRange() {
+        advance();
+        expect(TokenType.IDENTIFIER);
+        advance();
+        skipExpression();
+        expect(TokenType.DOT_DOT);
+        skipExpression();
+        if (isWord(peek(), "step")) {
+            advance();
+            skipExpression();
+        }
+        expect(TokenType.RIGHT_PAREN);
+    }
+
+    private void skipCounter(String name) {
+        if (!expect(TokenType.IDENTIFIER).lexeme.equals(name)) throw INVALID;
+    }
+
+    private void skipBlock() {
+        // directly nested blocks without recursion, like block(),
+        // remembering where each block closes for deferredBlock()
+        int[] opening = new int[16];
+        int depth = 0;
+        opening[0] = current - 1;
+
+        for (;;) {
+            while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()) {
+                if (match(TokenType.LEFT_BRACE)) {
+                    if (++depth == opening.length) opening = Arrays.copyOf(opening, depth * 2);
+                    opening[depth] = current - 1;
+                } else {
+                    skipDeclaration();
+                }
+            }
+
+            expect(TokenType.RIGHT_BRACE);
+            closing[opening[depth]] = current - 1;
+            if (depth-- == 0) return;
+        }
+    }
+
+    private void skipExpression() {
+        // same loop as expression(); the only error that is not
+        // about the order of the tokens is an invalid assignment
+        // target, so track whether the operand left of a '=' is
+        // a lone variable or property
+        int groupings = 0;
+        boolean variable = true;
+        // whether no operator binds each open grouping on the left,
+        // so that a property of it can still be assigned
+        boolean[] lone = new boolean[8];
+
+        for (;;) {
+            // a prefix "++" or "--" applies to the operand right after it,
+            // anything else in between is left to the eager parse
+            boolean increment = false;
+            for (;;) {
+                if (match(TokenType.PLUS_PLUS, TokenType.MINUS_MINUS)) {
+                    if (!check(TokenType.IDENTIFIER) && !check(TokenType.THIS)
+                            && !check(TokenType.SUPER) && !check(TokenType.LEFT_BRACKET)) throw INVALID;
+                    increment = true;
+                    variable = false;
+                } else if (match(TokenType.BANG, TokenType.MINUS)) {
+                    variable = false;
+                } else if (match(TokenType.LEFT_PAREN)) {
+                    if (groupings == lone.length) lone = Arrays.copyOf(lone, groupings * 2);
+                    lone[groupings++] = variable;
+                    variable = true;
+                } else {
+                    break;
+                }
+            }
+
+            boolean operand = variable;
+            boolean identifier = false;
+            if (match(TokenType.THIS)) {
+                if (classType == NO_CLASS) throw INVALID;
+            } else if (match(TokenType.SUPER)) {
+                if (classType != SUBCLASS) throw INVALID;
+                expect(TokenType.DOT);
+                expect(TokenType.IDENTIFIER);
+            } else if (match(TokenType.LEFT_BRACKET)) {
+                if (!match(TokenType.COLON) && !check(TokenType.RIGHT_BRACKET)) {
+                    skipExpression();
+                    boolean map = match(TokenType.COLON);
+                    if (map) skipExpression();
+                    while (match(TokenType.COMMA)) {
+                        skipExpression();
+                        if (map) {
+                            expect(TokenType.COLON);
+                            skipExpression();
+                        }
+                    }
+                }
+                expect(TokenType.RIGHT_BRACKET);
+            } else if (match(TokenType.IDENTIFIER)) {
+                identifier = true;
+            } else if (!match(TokenType.TRUE, TokenType.FALSE, TokenType.NIL,
+                    TokenType.NUMBER, TokenType.STRING)) {
+                throw INVALID;
+            }
+            // the operand can be assigned on its own, and so as the
+            // left side of a '=' if no operator binds it on the left
+            boolean target = skipPostfix(skipCalls(identifier));
+            if (increment && !target) throw INVALID;
+            variable = operand && target && !increment;
+
+            while (groupings > 0 && match(TokenType.RIGHT_PAREN)) {
+                groupings--;
+                variable = skipPostfix(skipCalls(false)) && lone[groupings];
+            }
+
+            TokenType operator = peek().type;
+            if (precedence(operator) < 0) break;
+            if (precedence(operator) == ASSIGNMENT && !variable) throw INVALID;
+
+            advance();
+            variable = precedence(operator) == ASSIGNMENT;
+        }
+
+        if (groupings > 0) throw INVALID;
+    }
+
+    private boolean skipPostfix(boolean target) {
+        // whether the operand is still an assignment target, which
+        // it is not after a postfix "++" or "--" (and must be before)
+        if (!match(TokenType.PLUS_PLUS, TokenType.MINUS_MINUS)) return target;
+        if (!target) throw INVALID;
+        return false;
+    }
+
+    private boolean skipCalls(boolean variable) {
+        // whether the operand is still an assignment target after
+        // its suffixes: a property or an element is, a call is not
+        for (;;) {
+            if (match(TokenType.DOT)) {
+                expect(TokenType.IDENTIFIER);
+                variable = true;
+                continue;
+            }
+            if (match(TokenType.LEFT_BRACKET)) {
+                skipExpression();
+                expect(TokenType.RIGHT_BRACKET);
+                variable = true;
+                continue;
+            }
+            if (!match(TokenType.LEFT_PAREN)) return variable;
+
+            int arguments = 0;
+            if (!check(TokenType.RIGHT_PAREN)) {
+                do {
+                    if (++arguments > 255) throw INVALID;
+                    skipExpression();
+                } while (match(TokenType.COMMA));
+            }
+            expect(TokenType.RIGHT_PAREN);
+            variable = false;
+        }
+    }
+
+    private Token expect(TokenType type) {
+        if (!check(type)) throw INVALID;
+        return advance();
+    }
+
     // =====================================================
     // helpers
 
@@ -329,8 +1185,17 @@ public class Parser {
         return tokens.get(current - 1);
     }
 
+    private <T extends Stmt> T at(int line, T stmt) {
+        // record the source line of a statement
+        stmt.line = line;
+        return stmt;
+    }
+
     private ParseError error(Token token, String errorMessage) {
-        Aroi.error(token, errorMessage);
+        // unchecked lazy parses leave reporting to the eager one
+        if (lazy && !checked) throw INVALID;
+
+        reporter.error(token, errorMessage);
         return new ParseError();
     }
 
@@ -341,7 +1206,7 @@ public class Parser {
             if (previous().type == TokenType.SEMICOLON) return;
 
             switch (peek().type) {
-                case CLASS, FUN, VAR, FOR, IF, WHILE, PRINT, RETURN -> {
+                case CLASS, FUN, MEMO, VAR, FOR, IF, WHILE, PARALLEL, SPAWN, PRINT, RETURN -> {
                     return;
                 }
             }
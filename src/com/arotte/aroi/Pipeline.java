@@ -0,0 +1,125 @@
+package com.arotte.aroi;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+
+/**Pipeline.java
+ *
+ * Runs a script with scanning, parsing and interpreting
+ * overlapped: the scanner and the parser run on threads of
+ * their own, and the interpreter (on the calling thread)
+ * executes the first top-level statements while the rest of
+ * the script is still being scanned and parsed.
+ *
+ * Unlike a normal run, a syntax error does not prevent the
+ * statements before it from running: no statement starts
+ * after the scanner or the parser reported an error, but the
+ * ones before may already have run. Scanner and parser errors
+ * may also be interleaved.
+ */
+class Pipeline {
+    // parsed top-level statements the parser may be ahead by
+    static final int QUEUE_CAPACITY = 256;
+
+    // the parser is done, no more statements follow
+    private static final Object END = new Object();
+    // a statement had a syntax error
+    private static final Object INVALID = new Object();
+
+    static void run(String source, Reporter reporter, Interpreter interpreter) {
+        TokenStream tokens = new TokenStream();
+        BlockingQueue<Object> statements = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        // with the stack of the main thread, for what it parses
+        Thread scanner = new Thread(null, () -> {
+            try {
+                new Scanner(source, reporter, tokens).scanTokens();
+            } finally {
+                tokens.finish();
+            }
+        }, "aroi-scanner", Aroi.STACK_SIZE);
+
+        Thread parser = new Thread(null, () -> {
+            Parser parsing = new Parser(tokens, reporter);
+            try {
+                parsing.parse(statement -> {
+                    try {
+                        statements.put(statement == null ? INVALID : statement);
+                    } catch (InterruptedException e) {
+                        throw new CancellationException("Parsing cancelled.");
+                    }
+                });
+            } catch (CancellationException e) {
+                // the run was cancelled, see below
+            } catch (StackOverflowError | RuntimeException e) {
+                // reported like a syntax error, so that no statement
+                // runs after it and the run does not end silently
+                reporter.error(parsing.line(), e instanceof StackOverflowError
+                        ? "Stack overflow." : "Internal error: " + e + ".");
+            } finally {
+                // the interpreter drains the queue unless it was cancelled
+                try {
+                    statements.put(END);
+                } catch (InterruptedException ignored) {}
+            }
+        }, "aroi-parser", Aroi.STACK_SIZE);
+
+        scanner.setDaemon(true);
+        parser.setDaemon(true);
+        scanner.start();
+        parser.start();
+
+        Statements parsed = new Statements(statements, reporter);
+        try {
+            interpreter.interpret(() -> parsed);
+
+            // let the parser finish, to report every syntax error
+            parsed.drain();
+        } catch (CancellationException e) {
+            // eg. by a server timeout
+            parser.interrupt();
+            throw e;
+        }
+    }
+
+    // the statements coming from the parser, as the interpreter reads them
+    private static class Statements implements Iterator<Stmt> {
+        private final BlockingQueue<Object> queue;
+        private final Reporter reporter;
+        private Object next = null;
+
+        Statements(BlockingQueue<Object> queue, Reporter reporter) {
+            this.queue = queue;
+            this.reporter = reporter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) next = take(queue);
+            return next != END && next != INVALID && !reporter.hadError;
+        }
+
+        @Override
+        public Stmt next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Stmt statement = (Stmt) next;
+            next = null;
+            return statement;
+        }
+
+        void drain() {
+            while (next != END) next = take(queue);
+        }
+    }
+
+    private static Object take(BlockingQueue<Object> statements) {
+        try {
+            return statements.take();
+        } catch (InterruptedException e) {
+            throw new CancellationException("Execution cancelled.");
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.arotte.aroi;
+
+import java.io.PrintStream;
+
+/**Reporter.java
+ *
+ * Reports syntax and runtime errors of a run,
+ * and remembers whether any of them happened.
+ *
+ * Every independent run (a script of a batch, a request
+ * of the server, ...) has its own reporter, so that the
+ * errors of one run never leak into another. Within a run,
+ * the threads of a pipelined run share the reporter.
+ */
+class Reporter {
+    private final PrintStream err;
+
+    volatile boolean hadError = false;
+    volatile boolean hadRuntimeError = false;
+
+    Reporter(PrintStream err) {
+        this.err = err;
+    }
+
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, " at end", message);
+        } else {
+            report(token.line, " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    void runtimeError(RuntimeError error) {
+        err.println("[line " + error.token.line + "] Error: " + error.getMessage());
+        hadRuntimeError = true;
+    }
+
+    void budgetExceeded(BudgetExceededError error) {
+        err.println("[line " + error.line + "] Error: " + error.getMessage());
+        hadRuntimeError = true;
+    }
+
+    private void report(int line, String where,
+                        String message) {
+        err.println(
+                "[line " + line + "] Error" + where + ": " + message);
+        hadError = true;
+    }
+}
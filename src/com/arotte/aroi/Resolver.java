@@ -0,0 +1,609 @@
+package com.arotte.aroi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**Resolver.java
+ *
+ * Works out what the variables of a top-level statement refer
+ * to, before the statement runs, and records it in the nodes.
+ *
+ * A name that no enclosing block has declared at that point
+ * is a global. Its nodes are marked, and cache the Binding of
+ * the global the first time they run, so that later reads and
+ * assignments skip the lookup through every environment. The
+ * cell stays valid if the global is assigned or declared
+ * again, eg. by a later line of the prompt.
+ *
+ * The parameters and locals of a function get a slot each in
+ * the array that is the frame of a call, sized here. A local
+ * that a nested function uses is boxed in a Binding of its own,
+ * which the nested function captures when it is declared (an
+ * upvalue). Locals of top-level blocks still live in an
+ * environment, found by name. "this" is a hidden parameter of
+ * methods, after the others.
+ *
+ * A local that is never assigned after its declaration, and
+ * is initialized with a literal (or not at all), has its value
+ * inlined into every read from its own function.
+ *
+ * Top-level blocks that a lazy parse has not parsed yet are
+ * skipped, and the locals declared around them are not inlined.
+ * They are resolved on their own when they first run, see
+ * resolveDeferred(). Functions are always parsed and resolved,
+ * and so are parallel loops, whose iterations would otherwise
+ * resolve their blocks on several threads at once.
+ *
+ * In the body of a parallel loop, an assignment to a variable
+ * declared outside of the loop is a reduction if it has the
+ * form "x = x + e" or "x = x * e" (and is not in a nested
+ * function): it goes into a partial result of the thread, and
+ * the loop assigns "x = x + partial" once it is done, through
+ * an assignment node of its own resolved after the loop. So are
+ * "x += e", "x *= e" and "x++". Any other such assignment is an
+ * error when it runs.
+ *
+ * An update ("x += e", "x++", ...) of a variable is resolved like
+ * an assignment, and finds the variable once for both its read
+ * and its write.
+ *
+ * A local of a top-level block that a function uses is marked as
+ * boxed as well, though it stays in its environment: a range loop
+ * then declares its counter in an environment per iteration, for
+ * the function to capture, instead of reusing one.
+ *
+ * A memoized function must not scream, or assign a variable declared
+ * outside of it, as a cached call does neither. The first such
+ * statement found is recorded on its declaration, for the error of
+ * the interpreter (calls of other functions are not checked).
+ *
+ * The block of a spawn statement is resolved as the body of a
+ * function without parameters, which the task calls. Like a
+ * closure, it captures the locals it uses, and shares them with
+ * the code around it.
+ */
+class Resolver {
+    // how a variable node finds its value
+    static final int DYNAMIC = 0;  // by name, through the environments
+    static final int GLOBAL = 1;   // through the cached Binding of a global
+    static final int CONSTANT = 2; // inlined
+    static final int LOCAL = 3;    // in a slot of the frame
+    static final int BOXED = 4;    // in a Binding in a slot of the frame
+    static final int UPVALUE = 5;  // in a Binding captured by the function
+    static final int REDUCTION = 6; // into a partial result of a parallel loop
+    static final int SHARED = 7;    // not allowed, from inside of a parallel loop
+
+    // a local variable declaration, and what happens to it
+    private static class Local {
+        final boolean literal;
+        final Object value;
+        // the function declaring it, and its slot in there;
+        // null and -1 for a local of a top-level block
+        final Frame frame;
+        final int slot;
+        // the index of its scope
+        final int depth;
+        // the Var, Function or Class node declaring it, or
+        // the Function node and the index of a parameter
+        final Stmt declaration;
+        final int parameter;
+        boolean assigned = false;
+        boolean captured = false;
+        final List<Expr.Variable> reads = new ArrayList<>();
+        final List<Expr.Assign> writes = new ArrayList<>();
+        final List<Expr.Update> updates = new ArrayList<>();
+
+        Local(boolean literal, Object value, Frame frame, int depth, Stmt declaration, int parameter) {
+            this.literal = literal;
+            this.value = value;
+            this.frame = frame;
+            this.slot = frame == null ? -1 : frame.size++;
+            this.depth = depth;
+            this.declaration = declaration;
+            this.parameter = parameter;
+        }
+    }
+
+    // the locals of a block, by name and in order of declaration
+    private static class Scope {
+        final Frame frame;
+        final Map<String, Local> names = new HashMap<>();
+        final List<Local> locals = new ArrayList<>();
+
+        Scope(Frame frame) {
+            this.frame = frame;
+        }
+    }
+
+    // a function being resolved
+    private static class Frame {
+        final Frame enclosing;
+        final Stmt.Function function;
+        int size = 0;
+        // what each upvalue captures: a slot of the enclosing frame,
+        // or (as -1 - index) an upvalue of the enclosing function
+        final List<Integer> captures = new ArrayList<>();
+        final List<Local> captured = new ArrayList<>();
+
+        Frame(Frame enclosing, Stmt.Function function) {
+            this.enclosing = enclosing;
+            this.function = function;
+        }
+    }
+
+    // a parallel loop being resolved
+    private static class Loop {
+        final Stmt.Parallel stmt;
+        final Frame frame;
+        // the number of scopes outside of the loop
+        final int depth;
+        // the reductions of the loop, and their index by variable name
+        final List<Expr.Assign> reductions = new ArrayList<>();
+        final Map<String, Integer> indexes = new HashMap<>();
+
+        Loop(Stmt.Parallel stmt, Frame frame, int depth) {
+            this.stmt = stmt;
+            this.frame = frame;
+            this.depth = depth;
+        }
+    }
+
+    // mark the end of a block, of a function and of a parallel loop on the work stack
+    private static final Object END_OF_SCOPE = new Object();
+    private static final Object END_OF_FUNCTION = new Object();
+    private static final Object END_OF_PARALLEL = new Object();
+
+    // a method of a class on the work stack
+    private static class Method {
+        final Stmt.Function function;
+
+        Method(Stmt.Function function) {
+            this.function = function;
+        }
+    }
+
+    private final List<Scope> scopes = new ArrayList<>();
+    private final List<Loop> loops = new ArrayList<>();
+    private final List<Object> statements = new ArrayList<>();
+    private final List<Expr> expressions = new ArrayList<>();
+
+    // the innermost function, null in top-level code
+    private Frame frame = null;
+    // names not declared in any enclosing block might not be globals
+    private boolean detached = false;
+
+    void resolve(Stmt statement) {
+        statements.add(statement);
+        run();
+    }
+
+    /**
+     * Resolve a block deferred by a lazy parse, when it first runs.
+     * It is nested in top-level code that was resolved without it, so
+     * the names it does not declare are looked up in the environments.
+     */
+    void resolveDeferred(Stmt.Block block) {
+        detached = true;
+        try {
+            beginScope();
+            for (int i = block.statements.size() - 1; i >= 0; i--)
+                statements.add(block.statements.get(i));
+            run();
+        } finally {
+            detached = false;
+        }
+    }
+
+    private void run() {
+        // explicit stacks, like the parser and the interpreter,
+        // so that deep nesting does not overflow the Java stack
+        while (!statements.isEmpty()) {
+            Object item = statements.remove(statements.size() - 1);
+            if (item == END_OF_SCOPE) {
+                endScope();
+                continue;
+            }
+            if (item == END_OF_FUNCTION) {
+                endFunction();
+                continue;
+            }
+            if (item == END_OF_PARALLEL) {
+                endParallel();
+                continue;
+            }
+            if (item instanceof Method) {
+                beginFunction(((Method) item).function, true);
+                continue;
+            }
+
+            Stmt stmt = (Stmt) item;
+            switch (stmt.kind) {
+                case Stmt.BLOCK -> {
+                    List<Stmt> body = ((Stmt.Block) stmt).statements;
+                    // blocks of functions are parsed here, for their slots
+                    if (frame == null && loops.isEmpty() && Parser.isUnparsed(body)) {
+                        // anything in there might assign the locals around it, or capture them
+                        for (Scope scope : scopes)
+                            for (Local local : scope.locals) {
+                                local.assigned = true;
+                                local.captured = true;
+                            }
+                        continue;
+                    }
+
+                    beginScope();
+                    for (int i = body.size() - 1; i >= 0; i--)
+                        statements.add(body.get(i));
+                }
+                case Stmt.EXPRESSION -> resolve(((Stmt.Expression) stmt).expression);
+                case Stmt.PRINT -> {
+                    impure(null, "it screams");
+                    resolve(((Stmt.Print) stmt).expression);
+                }
+                case Stmt.RETURN -> {
+                    Stmt.Return returnStmt = (Stmt.Return) stmt;
+                    if (returnStmt.value != null) resolve(returnStmt.value);
+                }
+                case Stmt.IF -> {
+                    Stmt.If ifStmt = (Stmt.If) stmt;
+                    resolve(ifStmt.condition);
+                    if (ifStmt.elseBranch != null) statements.add(ifStmt.elseBranch);
+                    statements.add(ifStmt.thenBranch);
+                }
+                case Stmt.WHILE -> {
+                    Stmt.While whileStmt = (Stmt.While) stmt;
+                    resolve(whileStmt.condition);
+                    statements.add(whileStmt.body);
+                }
+                case Stmt.FORIN -> {
+                    Stmt.ForIn loop = (Stmt.ForIn) stmt;
+                    // evaluated once, before the loop
+                    resolve(loop.counter.initializer);
+                    resolve(loop.end);
+                    if (loop.step != null) resolve(loop.step);
+
+                    // the counter is local to the loop, even in top-level code
+                    beginScope();
+                    loop.counter.local = frame != null;
+                    loop.counter.slot = declare(loop.counter.name.lexeme, false, null, loop.counter, -1);
+                    statements.add(loop.body);
+                }
+                case Stmt.PARALLEL -> {
+                    Stmt.Parallel loop = (Stmt.Parallel) stmt;
+                    // evaluated once, outside of the loop
+                    resolve(loop.counter.initializer);
+                    resolve(loop.end);
+                    resolve(loop.step);
+
+                    loops.add(new Loop(loop, frame, scopes.size()));
+                    statements.add(END_OF_PARALLEL);
+                    // the counter is local to the loop, even in top-level code
+                    beginScope();
+                    loop.counter.local = frame != null;
+                    loop.counter.slot = declare(loop.counter.name.lexeme, false, null, loop.counter, -1);
+                    statements.add(loop.body);
+                }
+                case Stmt.VAR -> {
+                    Stmt.Var var = (Stmt.Var) stmt;
+                    if (var.initializer != null) resolve(var.initializer);
+
+                    boolean literal = var.initializer == null || var.initializer.kind == Expr.LITERAL;
+                    var.local = frame != null;
+                    var.slot = declare(var.name.lexeme, literal,
+                            literal && var.initializer != null ? ((Expr.Literal) var.initializer).value : null,
+                            var, -1);
+                }
+                case Stmt.FUNCTION -> {
+                    Stmt.Function function = (Stmt.Function) stmt;
+                    // declared before the body, which can call it
+                    function.local = frame != null;
+                    function.slot = declare(function.name.lexeme, false, null, function, -1);
+                    beginFunction(function, false);
+                }
+                case Stmt.SPAWN -> beginFunction(((Stmt.Spawn) stmt).body, false);
+                case Stmt.CLASS -> {
+                    Stmt.Class klass = (Stmt.Class) stmt;
+                    if (klass.superclass != null) resolve(klass.superclass);
+
+                    klass.local = frame != null;
+                    klass.slot = declare(klass.name.lexeme, false, null, klass, -1);
+                    for (int i = klass.methods.size() - 1; i >= 0; i--)
+                        statements.add(new Method(klass.methods.get(i)));
+                }
+            }
+        }
+    }
+
+    private void beginFunction(Stmt.Function function, boolean method) {
+        frame = new Frame(frame, function);
+        int parameters = function.params.size();
+        function.boxedParams = new boolean[method ? parameters + 1 : parameters];
+
+        statements.add(END_OF_FUNCTION);
+        beginScope();
+        for (int i = 0; i < parameters; i++)
+            declare(function.params.get(i).lexeme, false, null, function, i);
+        if (method) declare("this", false, null, function, parameters);
+
+        // forces a deferred body to be parsed
+        for (int i = function.body.size() - 1; i >= 0; i--)
+            statements.add(function.body.get(i));
+    }
+
+    private int declare(String name, boolean literal, Object value, Stmt declaration, int parameter) {
+        // top-level declarations are globals
+        if (scopes.isEmpty()) return -1;
+
+        Scope scope = scopes.get(scopes.size() - 1);
+        Local local = new Local(literal, value, scope.frame, scopes.size() - 1, declaration, parameter);
+        scope.names.put(name, local);
+        scope.locals.add(local);
+        return local.slot;
+    }
+
+    private void resolve(Expr expression) {
+        expressions.add(expression);
+        while (!expressions.isEmpty()) {
+            Expr expr = expressions.remove(expressions.size() - 1);
+            switch (expr.kind) {
+                case Expr.VARIABLE -> {
+                    Expr.Variable variable = (Expr.Variable) expr;
+                    Local local = find(variable.name.lexeme);
+                    if (local == null) {
+                        variable.scope = detached ? DYNAMIC : GLOBAL;
+                    } else if (local.frame != frame && local.frame != null) {
+                        variable.scope = UPVALUE;
+                        variable.slot = upvalue(frame, local);
+                    } else {
+                        // decided when its scope ends
+                        local.reads.add(variable);
+                        if (local.frame != frame) local.captured = true;
+                    }
+                }
+                case Expr.ASSIGN -> {
+                    Expr.Assign assign = (Expr.Assign) expr;
+                    Local local = find(assign.name.lexeme);
+                    if (local == null || local.frame != frame) impure(local, assign.name);
+                    Loop loop = loops.isEmpty() ? null : loops.get(loops.size() - 1);
+                    if (loop != null && (local == null || local.depth < loop.depth)) {
+                        expressions.add(reduce(loop, assign));
+                        continue;
+                    }
+
+                    if (local == null) {
+                        assign.scope = detached ? DYNAMIC : GLOBAL;
+                    } else {
+                        local.assigned = true;
+                        if (local.frame != frame && local.frame != null) {
+                            assign.scope = UPVALUE;
+                            assign.slot = upvalue(frame, local);
+                        } else {
+                            local.writes.add(assign);
+                            if (local.frame != frame) local.captured = true;
+                        }
+                    }
+                    expressions.add(assign.value);
+                }
+                case Expr.UPDATE -> {
+                    Expr.Update update = (Expr.Update) expr;
+                    Local local = find(update.name.lexeme);
+                    if (local == null || local.frame != frame) impure(local, update.name);
+                    Loop loop = loops.isEmpty() ? null : loops.get(loops.size() - 1);
+                    if (loop != null && (local == null || local.depth < loop.depth)) {
+                        update.slot = reduction(loop, update.name, update.operator);
+                        update.scope = update.slot < 0 ? SHARED : REDUCTION;
+                    } else if (local == null) {
+                        update.scope = detached ? DYNAMIC : GLOBAL;
+                    } else {
+                        local.assigned = true;
+                        if (local.frame != frame && local.frame != null) {
+                            update.scope = UPVALUE;
+                            update.slot = upvalue(frame, local);
+                        } else {
+                            local.updates.add(update);
+                            if (local.frame != frame) local.captured = true;
+                        }
+                    }
+                    expressions.add(update.value);
+                }
+                case Expr.GET -> expressions.add(((Expr.Get) expr).object);
+                case Expr.SET -> {
+                    expressions.add(((Expr.Set) expr).value);
+                    expressions.add(((Expr.Set) expr).object);
+                }
+                case Expr.UPDATEFIELD -> {
+                    expressions.add(((Expr.UpdateField) expr).value);
+                    expressions.add(((Expr.UpdateField) expr).object);
+                }
+                case Expr.SUPER -> expressions.add(((Expr.Super) expr).receiver);
+                case Expr.ARRAY -> {
+                    List<Expr> elements = ((Expr.Array) expr).elements;
+                    for (int i = elements.size() - 1; i >= 0; i--)
+                        expressions.add(elements.get(i));
+                }
+                case Expr.MAP -> {
+                    Expr.Map map = (Expr.Map) expr;
+                    for (int i = map.keys.size() - 1; i >= 0; i--) {
+                        expressions.add(map.values.get(i));
+                        expressions.add(map.keys.get(i));
+                    }
+                }
+                case Expr.INDEX -> {
+                    expressions.add(((Expr.Index) expr).index);
+                    expressions.add(((Expr.Index) expr).object);
+                }
+                case Expr.INDEXSET -> {
+                    Expr.IndexSet set = (Expr.IndexSet) expr;
+                    expressions.add(set.value);
+                    expressions.add(set.index);
+                    expressions.add(set.object);
+                }
+                case Expr.UPDATEINDEX -> {
+                    Expr.UpdateIndex update = (Expr.UpdateIndex) expr;
+                    expressions.add(update.value);
+                    expressions.add(update.index);
+                    expressions.add(update.object);
+                }
+                case Expr.CALL -> {
+                    Expr.Call call = (Expr.Call) expr;
+                    for (int i = call.arguments.size() - 1; i >= 0; i--)
+                        expressions.add(call.arguments.get(i));
+                    expressions.add(call.callee);
+                }
+                case Expr.GROUPING -> expressions.add(((Expr.Grouping) expr).expression);
+                case Expr.UNARY -> expressions.add(((Expr.Unary) expr).right);
+                case Expr.BINARY -> {
+                    expressions.add(((Expr.Binary) expr).right);
+                    expressions.add(((Expr.Binary) expr).left);
+                }
+                case Expr.LOGICAL -> {
+                    expressions.add(((Expr.Logical) expr).right);
+                    expressions.add(((Expr.Logical) expr).left);
+                }
+            }
+        }
+    }
+
+    private void impure(Local local, Token name) {
+        impure(local, "it assigns '" + name.lexeme + "', declared outside of it");
+    }
+
+    private void impure(Local local, String reason) {
+        // every memoized function around that the variable (or
+        // null for anything) is not declared in
+        for (Frame outer = frame; outer != null; outer = outer.enclosing) {
+            if (outer.function.memo == 0 || outer.function.impure != null) continue;
+            if (local == null || !within(local.frame, outer)) outer.function.impure = reason;
+        }
+    }
+
+    private static boolean within(Frame inner, Frame outer) {
+        for (Frame frame = inner; frame != null; frame = frame.enclosing)
+            if (frame == outer) return true;
+        return false;
+    }
+
+    private Expr reduce(Loop loop, Expr.Assign assign) {
+        // an assignment in a parallel loop to a variable declared
+        // outside, returns the part of it that is evaluated
+        assign.scope = SHARED;
+        if (frame == loop.frame && assign.value.kind == Expr.BINARY) {
+            Expr.Binary binary = (Expr.Binary) assign.value;
+            TokenType operator = binary.operator.type;
+            String name = assign.name.lexeme;
+            if ((operator == TokenType.PLUS || operator == TokenType.STAR)
+                    && binary.left.kind == Expr.VARIABLE
+                    && ((Expr.Variable) binary.left).name.lexeme.equals(name)) {
+                assign.slot = reduction(loop, assign.name, binary.operator);
+                if (assign.slot >= 0) assign.scope = REDUCTION;
+                // the variable itself is not read
+                return binary.right;
+            }
+        }
+        return assign.value;
+    }
+
+    private int reduction(Loop loop, Token name, Token operator) {
+        // the index of the partial result of a variable reduced
+        // with the operator, -1 if it can't be
+        if (frame != loop.frame
+                || (operator.type != TokenType.PLUS && operator.type != TokenType.STAR)) return -1;
+
+        Integer index = loop.indexes.get(name.lexeme);
+        if (index == null) {
+            index = loop.reductions.size();
+            loop.indexes.put(name.lexeme, index);
+            Expr.Binary combined = new Expr.Binary(
+                    new Expr.Variable(name), operator, new Expr.Literal(null));
+            loop.reductions.add(new Expr.Assign(name, combined));
+        }
+
+        // a variable is reduced with a single operator
+        Expr.Binary combined = (Expr.Binary) loop.reductions.get(index).value;
+        return combined.operator.type == operator.type ? index : -1;
+    }
+
+    private void endParallel() {
+        Loop loop = loops.remove(loops.size() - 1);
+        loop.stmt.reductions = loop.reductions;
+        // the partial results are assigned after the loop, outside of it
+        for (Expr.Assign reduction : loop.reductions) resolve(reduction);
+    }
+
+    private Local find(String name) {
+        // the innermost local declared so far, null for a global
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Local local = scopes.get(i).names.get(name);
+            if (local != null) return local;
+        }
+        return null;
+    }
+
+    private int upvalue(Frame frame, Local local) {
+        // the index of the upvalue of the function that holds the
+        // local, capturing it through every function in between
+        int index = frame.captured.indexOf(local);
+        if (index >= 0) return index;
+
+        int capture;
+        if (frame.enclosing == local.frame) {
+            local.captured = true;
+            capture = local.slot;
+        } else {
+            capture = -1 - upvalue(frame.enclosing, local);
+        }
+
+        frame.captured.add(local);
+        frame.captures.add(capture);
+        return frame.captures.size() - 1;
+    }
+
+    private void beginScope() {
+        scopes.add(new Scope(frame));
+        statements.add(END_OF_SCOPE);
+    }
+
+    private void endScope() {
+        Scope scope = scopes.remove(scopes.size() - 1);
+        for (Local local : scope.locals) {
+            int access = local.frame == null ? DYNAMIC : local.captured ? BOXED : LOCAL;
+            boolean inlined = !local.assigned && local.literal;
+
+            for (Expr.Variable read : local.reads) {
+                read.scope = inlined ? CONSTANT : access;
+                read.slot = local.slot;
+                read.constant = local.value;
+            }
+            for (Expr.Assign write : local.writes) {
+                write.scope = access;
+                write.slot = local.slot;
+            }
+            for (Expr.Update update : local.updates) {
+                update.scope = access;
+                update.slot = local.slot;
+            }
+
+            if (local.parameter >= 0) {
+                ((Stmt.Function) local.declaration).boxedParams[local.parameter] = local.captured;
+            } else if (local.declaration.kind == Stmt.VAR) {
+                ((Stmt.Var) local.declaration).boxed = local.captured;
+            } else if (local.declaration.kind == Stmt.CLASS) {
+                ((Stmt.Class) local.declaration).boxed = local.captured;
+            } else {
+                ((Stmt.Function) local.declaration).boxed = local.captured;
+            }
+        }
+    }
+
+    private void endFunction() {
+        Stmt.Function function = frame.function;
+        function.frameSize = frame.size;
+        function.captures = new int[frame.captures.size()];
+        for (int i = 0; i < function.captures.length; i++)
+            function.captures[i] = frame.captures.get(i);
+
+        frame = frame.enclosing;
+    }
+}
@@ -10,7 +10,8 @@ import java.util.Map;
  */
 class Scanner {
     private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final Reporter reporter;
+    private final List<Token> tokens;
 
     // reserved keywords
     private static final Map<String, TokenType> keywords;
@@ -24,10 +25,13 @@ class Scanner {
         keywords.put("false", TokenType.FALSE);
         keywords.put("fun", TokenType.FUN);
         keywords.put("for", TokenType.FOR);
+        keywords.put("memo", TokenType.MEMO);
         keywords.put("nil", TokenType.NIL);
         keywords.put("or", TokenType.OR);
+        keywords.put("parallel", TokenType.PARALLEL);
         keywords.put("scream", TokenType.PRINT);
         keywords.put("return", TokenType.RETURN);
+        keywords.put("spawn", TokenType.SPAWN);
         keywords.put("super", TokenType.SUPER);
         keywords.put("this", TokenType.THIS);
         keywords.put("var", TokenType.VAR);
@@ -41,8 +45,18 @@ class Scanner {
     // line of current character
     private int line = 1;
 
-    Scanner(String source) {
+    Scanner(String source, Reporter reporter) {
+        this(source, reporter, new ArrayList<>());
+    }
+
+    /**
+     * @param tokens where to add the tokens, eg. a TokenStream
+     *               read by a parser on another thread
+     */
+    Scanner(String source, Reporter reporter, List<Token> tokens) {
         this.source = source;
+        this.reporter = reporter;
+        this.tokens = tokens;
     }
 
     List<Token> scanTokens() {
@@ -64,18 +78,25 @@ class Scanner {
             case (')') -> addToken(TokenType.RIGHT_PAREN);
             case ('{') -> addToken(TokenType.LEFT_BRACE);
             case ('}') -> addToken(TokenType.RIGHT_BRACE);
+            case ('[') -> addToken(TokenType.LEFT_BRACKET);
+            case (']') -> addToken(TokenType.RIGHT_BRACKET);
+            case (':') -> addToken(TokenType.COLON);
             case (',') -> addToken(TokenType.COMMA);
-            case ('.') -> addToken(TokenType.DOT);
-            case ('-') -> addToken(TokenType.MINUS);
-            case ('+') -> addToken(TokenType.PLUS);
+            case ('.') -> addToken(match('.') ? TokenType.DOT_DOT : TokenType.DOT);
             case (';') -> addToken(TokenType.SEMICOLON);
-            case ('*') -> addToken(TokenType.STAR);
 
             // single or two character tokens
             case ('!') -> addToken(match('=') ? TokenType.BANG_EQUAL : TokenType.BANG);
             case ('=') -> addToken(match('=') ? TokenType.EQUAL_EQUAL : TokenType.EQUAL);
             case ('>') -> addToken(match('=') ? TokenType.GREATER_EQUAL : TokenType.GREATER);
             case ('<') -> addToken(match('=') ? TokenType.LESS_EQUAL : TokenType.LESS);
+            case ('*') -> addToken(match('=') ? TokenType.STAR_EQUAL : TokenType.STAR);
+
+            // "-" "--" "-=", and the same with "+"
+            case ('-') -> addToken(match('-') ? TokenType.MINUS_MINUS
+                    : match('=') ? TokenType.MINUS_EQUAL : TokenType.MINUS);
+            case ('+') -> addToken(match('+') ? TokenType.PLUS_PLUS
+                    : match('=') ? TokenType.PLUS_EQUAL : TokenType.PLUS);
 
             // slash
             case ('/') -> {
@@ -94,7 +115,7 @@ class Scanner {
                     advance();
 
                 } else {
-                    addToken(TokenType.SLASH);
+                    addToken(match('=') ? TokenType.SLASH_EQUAL : TokenType.SLASH);
                 }
             }
 
@@ -113,7 +134,7 @@ class Scanner {
                 else if (isAlpha(c))
                     identifier();
                 else
-                    Aroi.error(line, "Unexpected character.");
+                    reporter.error(line, "Unexpected character.");
             }
         }
     }
@@ -160,7 +181,7 @@ class Scanner {
         }
 
         if (isAtEnd()) {
-            Aroi.error(line, "Unterminated string.");
+            reporter.error(line, "Unterminated string.");
             return;
         }
 
@@ -0,0 +1,285 @@
+package com.arotte.aroi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**Server.java
+ *
+ * Evaluates scripts on behalf of clients in a long-running,
+ * already warmed-up JVM, listening on a localhost TCP port
+ * or on a Unix domain socket.
+ *
+ * Protocol (UTF-8, one request per connection):
+ *
+ *   request:  "EVAL <bytes> [<timeout-ms>]\n" followed by the source
+ *             "FILE <path> [<timeout-ms>]\n"
+ *             where the path can have spaces, but one ending in a
+ *             space and a number is only read with a timeout after it,
+ *             and a timeout is positive, and at most --timeout
+ *   response: "out <line>\n" for every line the script prints
+ *             "err <line>\n" for every diagnostic
+ *             "exit <code>\n" once the script is done
+ *
+ * Output is streamed back while the script is running.
+ * Every request runs in its own interpreter and global
+ * environment, and is cancelled when its timeout expires.
+ */
+class Server {
+    static final int DEFAULT_PORT = 7411;
+
+    private static final Charset UTF_8 = StandardCharsets.UTF_8;
+    private static final Pattern NUMBER = Pattern.compile("-?[0-9]+");
+
+    // exercises the scanner, parser and interpreter before serving
+    private static final String WARMUP =
+            "var s = \"\"; var n = 0;\n" +
+            "for (var i = 0; i < 2000; i = i + 1) {\n" +
+            "    if (i / 2 > 10 and !(i == 3) or false) n = n + i * 2 - 1;\n" +
+            "    s = \"x\" + i;\n" +
+            "}\n";
+
+    private final SocketAddress address;
+    private final long timeoutMillis;
+    private final Budget budget;
+
+    private final ExecutorService connections = Executors.newCachedThreadPool(daemon("aroi-connection"));
+    private final ExecutorService evaluations = Executors.newCachedThreadPool(daemon("aroi-eval"));
+
+    /**
+     * @param address a localhost address, or a Unix domain socket address
+     * @param timeoutMillis default timeout of a request, 0 for none
+     * @param budget limits of every request, or null
+     */
+    Server(SocketAddress address, long timeoutMillis, Budget budget) {
+        this.address = address;
+        this.timeoutMillis = timeoutMillis;
+
+        // an unlimited budget still lets timed out requests be interrupted
+        this.budget = budget != null ? budget
+                : new Budget(Budget.UNLIMITED, Budget.UNLIMITED, Budget.UNLIMITED);
+    }
+
+    static SocketAddress tcp(int port) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    static SocketAddress unix(String path) {
+        return UnixDomainSocketAddress.of(path);
+    }
+
+    void serve() throws IOException {
+        warmUp();
+
+        boolean isUnix = address instanceof UnixDomainSocketAddress;
+        try (ServerSocketChannel server = isUnix
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open()) {
+            if (isUnix) Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            server.bind(address);
+            System.err.println("Aroi server listening on " + address);
+
+            for (;;) {
+                SocketChannel client = server.accept();
+                connections.execute(() -> handle(client));
+            }
+        }
+    }
+
+    private void warmUp() {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        for (int i = 0; i < 200; i++) {
+            Reporter reporter = new Reporter(discard);
+            Aroi.run(WARMUP, reporter, new Interpreter(discard, reporter));
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client;
+             InputStream in = Channels.newInputStream(client);
+             OutputStream socket = Channels.newOutputStream(client)) {
+            Response response = new Response(socket);
+            try {
+                respond(in, response);
+            } finally {
+                response.close();
+            }
+        } catch (IOException e) {
+            // the client went away, nothing left to report to
+        }
+    }
+
+    private void respond(InputStream in, Response response) throws IOException {
+        String request = readLine(in).trim();
+        int space = request.indexOf(' ');
+        String command = space < 0 ? request : request.substring(0, space);
+        String argument = space < 0 ? "" : request.substring(space + 1).trim();
+        long timeout = timeoutMillis;
+        String source;
+
+        try {
+            // the timeout is split off the end, as a path can have spaces
+            int last = argument.lastIndexOf(' ');
+            if (last >= 0 && NUMBER.matcher(argument.substring(last + 1)).matches()) {
+                timeout = Long.parseLong(argument.substring(last + 1));
+                argument = argument.substring(0, last).trim();
+                // 0 would be no timeout, which only the server can set
+                if (timeout <= 0) {
+                    response.finish("Bad request, timeout must be positive.", 64);
+                    return;
+                }
+                // and it can only shorten the timeout of the server
+                if (timeoutMillis > 0) timeout = Math.min(timeout, timeoutMillis);
+            }
+
+            if (command.equals("EVAL") && !argument.isEmpty()) {
+                int length = Integer.parseInt(argument);
+                if (length < 0) {
+                    response.finish("Bad request, negative length.", 64);
+                    return;
+                }
+                source = new String(in.readNBytes(length), UTF_8);
+            } else if (command.equals("FILE") && !argument.isEmpty()) {
+                source = new String(Files.readAllBytes(Paths.get(argument)), Charset.defaultCharset());
+            } else {
+                response.finish("Bad request, expected EVAL or FILE.", 64);
+                return;
+            }
+        } catch (NumberFormatException e) {
+            response.finish("Bad request, malformed number.", 64);
+            return;
+        } catch (IOException | InvalidPathException e) {
+            response.finish("Cannot read script: " + e.getMessage(), 74);
+            return;
+        }
+
+        evaluate(source, timeout, response);
+    }
+
+    private void evaluate(String source, long timeout, Response response) throws IOException {
+        PrintStream out = new PrintStream(response.stream("out"), true, UTF_8);
+        PrintStream err = new PrintStream(response.stream("err"), true, UTF_8);
+        Reporter reporter = new Reporter(err);
+        Interpreter interpreter = new Interpreter(out, reporter);
+        interpreter.setBudget(budget);
+
+        Future<?> run = evaluations.submit(() -> Aroi.run(source, reporter, interpreter));
+        try {
+            if (timeout > 0) run.get(timeout, TimeUnit.MILLISECONDS);
+            else run.get();
+        } catch (TimeoutException e) {
+            // interrupts the evaluation, which stops at its next budget check
+            run.cancel(true);
+            response.finish("Execution timed out after " + timeout + " ms.", 70);
+            return;
+        } catch (ExecutionException e) {
+            response.finish(e.getCause() instanceof StackOverflowError
+                    ? "Stack overflow." : "Internal error: " + e.getCause(), 70);
+            return;
+        } catch (InterruptedException | CancellationException e) {
+            run.cancel(true);
+            response.finish("Server is shutting down.", 70);
+            return;
+        }
+
+        out.flush();
+        err.flush();
+        if (reporter.hadError) response.finish(null, 65);
+        else if (reporter.hadRuntimeError) response.finish(null, 70);
+        else response.finish(null, 0);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b == -1) throw new EOFException();
+            line.write(b);
+        }
+        return line.toString(UTF_8);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(null, runnable, name, Aroi.STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Frames the output of a request into prefixed lines.
+     * Once the request is finished, late output of a cancelled
+     * evaluation is dropped.
+     */
+    private static class Response {
+        private final OutputStream socket;
+        private boolean finished = false;
+
+        Response(OutputStream socket) {
+            this.socket = socket;
+        }
+
+        OutputStream stream(String kind) {
+            return new OutputStream() {
+                private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+                @Override
+                public void write(int b) throws IOException {
+                    if (b == '\n') flushLine();
+                    else if (b != '\r') line.write(b);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    if (line.size() > 0) flushLine();
+                }
+
+                private void flushLine() throws IOException {
+                    send(kind, line.toString(UTF_8));
+                    line.reset();
+                }
+            };
+        }
+
+        synchronized void send(String kind, String text) throws IOException {
+            if (finished) return;
+            socket.write((kind + " " + text + "\n").getBytes(UTF_8));
+            socket.flush();
+        }
+
+        synchronized void finish(String diagnostic, int exitCode) throws IOException {
+            if (diagnostic != null) send("err", diagnostic);
+            send("exit", Integer.toString(exitCode));
+            finished = true;
+        }
+
+        synchronized void close() {
+            finished = true;
+        }
+    }
+}
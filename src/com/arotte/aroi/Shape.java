@@ -0,0 +1,51 @@
+package com.arotte.aroi;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**Shape.java
+ *
+ * A hidden class: the names of the fields of an instance, and
+ * the slot of each in its array of fields.
+ *
+ * Instances that got the same fields in the same order share
+ * one shape, because adding a field follows a transition that
+ * is only created once. A shape never changes, so whatever was
+ * looked up for one (see InlineCache) stays valid.
+ */
+final class Shape {
+    // the class of the instances, every class has a root shape
+    final AroiClass owner;
+    final int size;
+    private final Map<String, Integer> slots;
+    private final Map<String, Shape> transitions = new ConcurrentHashMap<>();
+
+    Shape(AroiClass owner) {
+        this.owner = owner;
+        this.size = 0;
+        this.slots = Map.of();
+    }
+
+    private Shape(Shape parent, String name) {
+        this.owner = parent.owner;
+        this.size = parent.size + 1;
+        this.slots = new HashMap<>(parent.slots);
+        this.slots.put(name, parent.size);
+    }
+
+    /**
+     * The slot of a field, or -1 if instances of this shape do not have it.
+     */
+    int slot(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * The shape after adding a field, which gets the slot at the end.
+     */
+    Shape with(String name) {
+        return transitions.computeIfAbsent(name, added -> new Shape(this, added));
+    }
+}
@@ -0,0 +1,266 @@
+package com.arotte.aroi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**Snapshot.java
+ *
+ * A binary image of the global variables, written after
+ * running a prelude, so that later runs can restore the
+ * globals instead of running the prelude again.
+ *
+ * Layout, big-endian:
+ *   magic "AROISNAP", int version, 32 bytes SHA-256 of the
+ *   prelude source, int count, then per global its name
+ *   and its value: a tag byte (NIL, FALSE, TRUE, NUMBER,
+ *   STRING, NUMBERS, VALUES, MAP or REFERENCE), followed by
+ *   a double for numbers, by a length-prefixed UTF-8 string
+ *   for strings, by an int size and as many doubles for an
+ *   array of numbers (read in bulk from the mapping), by an
+ *   int size and as many values for any other array, or by
+ *   an int size and as many keys and values for a map.
+ *   Names are length-prefixed UTF-8 as well.
+ *
+ *   Arrays and maps are numbered in the order they are
+ *   written, and one written before, eg. in another global or
+ *   in itself, is a REFERENCE followed by its int number, so
+ *   that it is restored as the same array or map.
+ *
+ * Images are read through a memory mapping, and an image
+ * of another prelude (or a broken one) is simply ignored.
+ */
+class Snapshot {
+    private static final byte[] MAGIC = "AROISNAP".getBytes(UTF_8);
+    private static final int VERSION = 1;
+
+    // value tags
+    private static final byte NIL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte NUMBER = 3;
+    private static final byte STRING = 4;
+    private static final byte NUMBERS = 5;
+    private static final byte VALUES = 6;
+    private static final byte REFERENCE = 7;
+    private static final byte MAP = 8;
+
+    static byte[] hash(String prelude) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(prelude.getBytes(UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write the globals to an image, replacing it atomically,
+     * so that a concurrent run never reads half an image.
+     */
+    static void write(Path image, byte[] hash, Environment globals) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.write(hash);
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        globals.forEach((name, value) -> {
+            // the builtins are defined by every interpreter anyway
+            if (!(value instanceof NativeFunction)) values.put(name, value);
+        });
+        out.writeInt(values.size());
+        Map<Object, Integer> written = new IdentityHashMap<>();
+        for (Map.Entry<String, Object> global : values.entrySet()) {
+            writeString(out, global.getKey());
+            writeValue(out, global.getKey(), global.getValue(), written);
+        }
+        out.flush();
+
+        Path absolute = image.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, bytes.toByteArray());
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Define the globals of an image.
+     * @return false, without defining anything, if there is no
+     *         image, or it is not an image of this prelude
+     */
+    static boolean restore(Path image, byte[] hash, Environment globals) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != VERSION) return false;
+
+            byte[] imageHash = new byte[hash.length];
+            buffer.get(imageHash);
+            if (!Arrays.equals(imageHash, hash)) return false;
+
+            // read everything before defining anything
+            int count = buffer.getInt();
+            String[] names = new String[count];
+            Object[] values = new Object[count];
+            List<Object> read = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                names[i] = readString(buffer);
+                values[i] = readValue(buffer, read);
+            }
+
+            for (int i = 0; i < count; i++)
+                globals.define(names[i], values[i]);
+            return true;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, String name, Object value,
+                                   Map<Object, Integer> written) throws IOException {
+        Integer reference = written.get(value);
+        if (reference != null) {
+            out.writeByte(REFERENCE);
+            out.writeInt(reference);
+            return;
+        }
+
+        if (value == null) {
+            out.writeByte(NIL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(NUMBER);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof AroiArray) {
+            AroiArray array = (AroiArray) value;
+            written.put(array, written.size());
+            int size = array.size;
+            double[] numbers = array.numbers();
+            out.writeByte(numbers != null ? NUMBERS : VALUES);
+            out.writeInt(size);
+            if (numbers != null) {
+                for (int i = 0; i < size; i++) out.writeDouble(numbers[i]);
+            } else {
+                for (int i = 0; i < size; i++) writeValue(out, name, array.get(i), written);
+            }
+        } else if (value instanceof AroiMap) {
+            AroiMap map = (AroiMap) value;
+            written.put(map, written.size());
+            List<Object> keys = map.keys();
+            List<Object> values = map.values();
+            out.writeByte(MAP);
+            out.writeInt(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                writeValue(out, name, keys.get(i), written);
+                writeValue(out, name, values.get(i), written);
+            }
+        } else {
+            throw new IOException("Cannot snapshot the value of '" + name + "'.");
+        }
+    }
+
+    private static Object readValue(MappedByteBuffer buffer, List<Object> read) {
+        byte tag = buffer.get();
+        return switch (tag) {
+            case NIL -> null;
+            case FALSE -> false;
+            case TRUE -> true;
+            case NUMBER -> buffer.getDouble();
+            case STRING -> readString(buffer);
+            case NUMBERS -> readNumbers(buffer, read);
+            case VALUES -> readValues(buffer, read);
+            case MAP -> readMap(buffer, read);
+            case REFERENCE -> read.get(buffer.getInt());
+            default -> throw new IllegalArgumentException("Unknown value tag " + tag + ".");
+        };
+    }
+
+    private static AroiArray readNumbers(MappedByteBuffer buffer, List<Object> read) {
+        int size = buffer.getInt();
+        // checked, so that a broken size can't allocate a huge array
+        if (size < 0 || size > buffer.remaining() / Double.BYTES) throw new BufferUnderflowException();
+        double[] numbers = new double[size];
+        DoubleBuffer doubles = buffer.asDoubleBuffer();
+        doubles.get(numbers);
+        buffer.position(buffer.position() + size * Double.BYTES);
+
+        AroiArray array = new AroiArray(numbers, size);
+        read.add(array);
+        return array;
+    }
+
+    private static AroiArray readValues(MappedByteBuffer buffer, List<Object> read) {
+        int size = buffer.getInt();
+        // every value takes a byte at least
+        if (size < 0 || size > buffer.remaining()) throw new BufferUnderflowException();
+        Object[] values = new Object[size];
+        // added before its values are read, which can refer to it
+        AroiArray array = new AroiArray(values, size);
+        read.add(array);
+        for (int i = 0; i < size; i++) values[i] = readValue(buffer, read);
+        return array;
+    }
+
+    private static AroiMap readMap(MappedByteBuffer buffer, List<Object> read) {
+        int size = buffer.getInt();
+        // every entry takes two bytes at least
+        if (size < 0 || size > buffer.remaining() / 2) throw new BufferUnderflowException();
+        AroiMap map = new AroiMap();
+        read.add(map);
+        for (int i = 0; i < size; i++) {
+            Object key = readValue(buffer, read);
+            if (key == null) throw new IllegalArgumentException("Map keys can't be nil.");
+            map.put(key, readValue(buffer, read));
+        }
+        return map;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new BufferUnderflowException();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -9,21 +9,52 @@ import java.util.List;
  *
  * Generated by com.arotte.tool.GenerateAst.java
  */
-abstract class Stmt {
+abstract sealed class Stmt {
   interface Visitor<R> {
     R visitBlockStmt(Block stmt);
+    R visitClassStmt(Class stmt);
     R visitExpressionStmt(Expression stmt);
+    R visitFunctionStmt(Function stmt);
+    R visitForInStmt(ForIn stmt);
     R visitIfStmt(If stmt);
+    R visitParallelStmt(Parallel stmt);
     R visitPrintStmt(Print stmt);
+    R visitReturnStmt(Return stmt);
+    R visitSpawnStmt(Spawn stmt);
     R visitVarStmt(Var stmt);
     R visitWhileStmt(While stmt);
   }
 
-  static class Block extends Stmt {
+  // kind tags of the AST classes
+  static final int BLOCK = 0;
+  static final int CLASS = 1;
+  static final int EXPRESSION = 2;
+  static final int FUNCTION = 3;
+  static final int FORIN = 4;
+  static final int IF = 5;
+  static final int PARALLEL = 6;
+  static final int PRINT = 7;
+  static final int RETURN = 8;
+  static final int SPAWN = 9;
+  static final int VAR = 10;
+  static final int WHILE = 11;
+
+  // kind tag of this node
+  final int kind;
+
+  Stmt(int kind) {
+    this.kind = kind;
+  }
+
+  // common fields
+  int line;
+
+  static final class Block extends Stmt {
     // fields
     final List<Stmt> statements;
     // constructor
     Block(List<Stmt> statements) {
+      super(BLOCK);
       this.statements = statements;
     }
     // visitor pattern
@@ -33,11 +64,35 @@ abstract class Stmt {
     }
   }
 
-  static class Expression extends Stmt {
+  static final class Class extends Stmt {
+    // fields
+    final Token name;
+    final Expr.Variable superclass;
+    final List<Stmt.Function> methods;
+    // filled in after construction
+    boolean local;
+    boolean boxed;
+    int slot;
+    // constructor
+    Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
+      super(CLASS);
+      this.name = name;
+      this.superclass = superclass;
+      this.methods = methods;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitClassStmt(this);
+    }
+  }
+
+  static final class Expression extends Stmt {
     // fields
     final Expr expression;
     // constructor
     Expression(Expr expression) {
+      super(EXPRESSION);
       this.expression = expression;
     }
     // visitor pattern
@@ -47,13 +102,65 @@ abstract class Stmt {
     }
   }
 
-  static class If extends Stmt {
+  static final class Function extends Stmt {
+    // fields
+    final Token name;
+    final List<Token> params;
+    final List<Stmt> body;
+    // filled in after construction
+    boolean local;
+    boolean boxed;
+    int slot;
+    int frameSize;
+    boolean[] boxedParams;
+    int[] captures;
+    int memo;
+    String impure;
+    // constructor
+    Function(Token name, List<Token> params, List<Stmt> body) {
+      super(FUNCTION);
+      this.name = name;
+      this.params = params;
+      this.body = body;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitFunctionStmt(this);
+    }
+  }
+
+  static final class ForIn extends Stmt {
+    // fields
+    final Token keyword;
+    final Stmt.Var counter;
+    final Expr end;
+    final Expr step;
+    final Stmt body;
+    // constructor
+    ForIn(Token keyword, Stmt.Var counter, Expr end, Expr step, Stmt body) {
+      super(FORIN);
+      this.keyword = keyword;
+      this.counter = counter;
+      this.end = end;
+      this.step = step;
+      this.body = body;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitForInStmt(this);
+    }
+  }
+
+  static final class If extends Stmt {
     // fields
     final Expr condition;
     final Stmt thenBranch;
     final Stmt elseBranch;
     // constructor
     If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
+      super(IF);
       this.condition = condition;
       this.thenBranch = thenBranch;
       this.elseBranch = elseBranch;
@@ -65,11 +172,39 @@ abstract class Stmt {
     }
   }
 
-  static class Print extends Stmt {
+  static final class Parallel extends Stmt {
+    // fields
+    final Token keyword;
+    final Stmt.Var counter;
+    final Token comparison;
+    final Expr end;
+    final Expr step;
+    final Stmt body;
+    // filled in after construction
+    List<Expr.Assign> reductions;
+    // constructor
+    Parallel(Token keyword, Stmt.Var counter, Token comparison, Expr end, Expr step, Stmt body) {
+      super(PARALLEL);
+      this.keyword = keyword;
+      this.counter = counter;
+      this.comparison = comparison;
+      this.end = end;
+      this.step = step;
+      this.body = body;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitParallelStmt(this);
+    }
+  }
+
+  static final class Print extends Stmt {
     // fields
     final Expr expression;
     // constructor
     Print(Expr expression) {
+      super(PRINT);
       this.expression = expression;
     }
     // visitor pattern
@@ -79,12 +214,51 @@ abstract class Stmt {
     }
   }
 
-  static class Var extends Stmt {
+  static final class Return extends Stmt {
+    // fields
+    final Token keyword;
+    final Expr value;
+    // constructor
+    Return(Token keyword, Expr value) {
+      super(RETURN);
+      this.keyword = keyword;
+      this.value = value;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitReturnStmt(this);
+    }
+  }
+
+  static final class Spawn extends Stmt {
+    // fields
+    final Token keyword;
+    final Stmt.Function body;
+    // constructor
+    Spawn(Token keyword, Stmt.Function body) {
+      super(SPAWN);
+      this.keyword = keyword;
+      this.body = body;
+    }
+    // visitor pattern
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitSpawnStmt(this);
+    }
+  }
+
+  static final class Var extends Stmt {
     // fields
     final Token name;
     final Expr initializer;
+    // filled in after construction
+    boolean local;
+    boolean boxed;
+    int slot;
     // constructor
     Var(Token name, Expr initializer) {
+      super(VAR);
       this.name = name;
       this.initializer = initializer;
     }
@@ -95,12 +269,13 @@ abstract class Stmt {
     }
   }
 
-  static class While extends Stmt {
+  static final class While extends Stmt {
     // fields
     final Expr condition;
     final Stmt body;
     // constructor
     While(Expr condition, Stmt body) {
+      super(WHILE);
       this.condition = condition;
       this.body = body;
     }
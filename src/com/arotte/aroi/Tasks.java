@@ -0,0 +1,140 @@
+package com.arotte.aroi;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**Tasks.java
+ *
+ * The tasks started by the spawn statements of a run. Each one
+ * runs on a thread of its own: a virtual thread on JVMs that
+ * have them (Java 21 and later), looked up reflectively so the
+ * interpreter still builds on Java 17, so that a script can run
+ * thousands of tasks at once. Otherwise, it is a pooled daemon
+ * thread with the stack of the main thread (see Aroi.STACK_SIZE).
+ *
+ * A virtual thread runs on the stack of its carrier thread, so
+ * recursion in a task only goes as deep as the default thread
+ * stack of the JVM (-Xss) allows, only hundreds of calls for the
+ * default 1 MB, past which the task fails with "Stack overflow."
+ *
+ * A run is over once every task it started is, including the
+ * tasks started by its tasks (see Interpreter.interpret()).
+ */
+final class Tasks {
+    private static final ExecutorService EXECUTOR = executor();
+
+    // tasks not waited for yet, in the order they were started
+    private final Queue<Future<?>> pending = new ConcurrentLinkedQueue<>();
+
+    // the thread running the run, and the first budget a task exceeded
+    private volatile Thread runner;
+    private volatile BudgetExceededError exceeded;
+
+    private static ExecutorService executor() {
+        try {
+            // Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("aroi-task").factory())
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Object virtual = Thread.class.getMethod("ofVirtual").invoke(null);
+            virtual = builder.getMethod("name", String.class).invoke(virtual, "aroi-task");
+            ThreadFactory factory = (ThreadFactory) builder.getMethod("factory").invoke(virtual);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(null, task, "aroi-task", Aroi.STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Start a run on the current thread, which the tasks interrupt
+     * when they exceed its budget.
+     */
+    void start() {
+        runner = Thread.currentThread();
+        exceeded = null;
+    }
+
+    /**
+     * End the run, as a task exceeded its budget: the run's thread
+     * is interrupted, and reports the error (see exceeded()), and
+     * the other tasks are cancelled. Only the first error is kept.
+     */
+    synchronized void exceed(BudgetExceededError error) {
+        if (exceeded != null) return;
+        exceeded = error;
+        Thread thread = runner;
+        if (thread != null) thread.interrupt();
+        cancel();
+    }
+
+    /**
+     * End the run: its tasks are cancelled, and no longer interrupt
+     * its thread.
+     */
+    synchronized void finish() {
+        runner = null;
+        cancel();
+    }
+
+    /**
+     * @return the budget a task exceeded in this run, or null
+     */
+    BudgetExceededError exceeded() {
+        return exceeded;
+    }
+
+    void spawn(Runnable task) {
+        pending.add(EXECUTOR.submit(task));
+    }
+
+    /**
+     * Wait until every task has ended. If the waiting thread is
+     * interrupted, eg. by a server timeout, the tasks are cancelled.
+     *
+     * @param timed whether to wait until the deadline at most
+     * @param deadline a System.nanoTime()
+     * @return false if the deadline passed first, and the tasks were cancelled
+     */
+    boolean await(boolean timed, long deadline) {
+        Future<?> task;
+        while ((task = pending.poll()) != null) {
+            try {
+                if (timed) task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                else task.get();
+            } catch (TimeoutException e) {
+                task.cancel(true);
+                cancel();
+                return false;
+            } catch (InterruptedException e) {
+                task.cancel(true);
+                cancel();
+                throw new CancellationException("Execution cancelled.");
+            } catch (ExecutionException e) {
+                // tasks report their own errors, this is a crash
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Interrupt every task, which stops at its next budget check,
+     * or in a send or receive.
+     */
+    void cancel() {
+        Future<?> task;
+        while ((task = pending.poll()) != null) task.cancel(true);
+    }
+}
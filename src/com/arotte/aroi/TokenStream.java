@@ -0,0 +1,80 @@
+package com.arotte.aroi;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**TokenStream.java
+ *
+ * A list of tokens that one thread (the scanner) appends to
+ * while another thread (the parser) reads it.
+ *
+ * Tokens are published in batches, so the two threads only
+ * synchronize once every BATCH tokens. Reading a token that is
+ * not published yet blocks until the scanner gets that far.
+ */
+class TokenStream extends AbstractList<Token> {
+    private static final int BATCH = 1024;
+
+    // only touched by the scanner
+    private Token[] tokens = new Token[BATCH];
+    private int size = 0;
+
+    // what the parser can see: every token in shared[0, published)
+    private volatile Token[] shared = tokens;
+    private volatile int published = 0;
+    private volatile boolean finished = false;
+
+    @Override
+    public boolean add(Token token) {
+        if (size == tokens.length) tokens = Arrays.copyOf(tokens, size * 2);
+        tokens[size++] = token;
+
+        if (size - published >= BATCH || token.type == TokenType.EOF) publish();
+        return true;
+    }
+
+    /**
+     * Called by the scanner when it is done, even if it failed,
+     * so that the parser never waits forever.
+     */
+    synchronized void finish() {
+        shared = tokens;
+        published = size;
+        finished = true;
+        notifyAll();
+    }
+
+    private synchronized void publish() {
+        shared = tokens;
+        published = size;
+        notifyAll();
+    }
+
+    @Override
+    public Token get(int index) {
+        if (index >= published) await(index + 1);
+        return shared[index];
+    }
+
+    @Override
+    public int size() {
+        // the final size, only known once the scanner is done
+        await(Integer.MAX_VALUE);
+        return published;
+    }
+
+    private synchronized void await(int count) {
+        boolean interrupted = false;
+        while (published < count && !finished) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        if (published < count && count != Integer.MAX_VALUE)
+            throw new IllegalStateException("The scanner stopped before the end of the source.");
+    }
+}
@@ -6,10 +6,15 @@ package com.arotte.aroi;
 enum TokenType {
     // single-character tokens
     LEFT_PAREN, RIGHT_PAREN, LEFT_BRACE, RIGHT_BRACE,
-    COMMA, DOT, MINUS, PLUS, SEMICOLON, SLASH, STAR,
+    LEFT_BRACKET, RIGHT_BRACKET,
+    COLON, COMMA, DOT, MINUS, PLUS, SEMICOLON, SLASH, STAR,
 
     // one or two character tokens
     BANG, BANG_EQUAL,
+    DOT_DOT,
+    MINUS_EQUAL, MINUS_MINUS,
+    PLUS_EQUAL, PLUS_PLUS,
+    SLASH_EQUAL, STAR_EQUAL,
     EQUAL, EQUAL_EQUAL,
     GREATER, GREATER_EQUAL,
     LESS, LESS_EQUAL,
@@ -19,8 +24,8 @@ enum TokenType {
     IDENTIFIER, STRING, NUMBER,
 
     // keywords
-    AND, CLASS, ELSE, FALSE, FUN, FOR, IF, NIL, OR,
-    PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE,
+    AND, CLASS, ELSE, FALSE, FUN, FOR, IF, MEMO, NIL, OR,
+    PARALLEL, PRINT, RETURN, SPAWN, SUPER, THIS, TRUE, VAR, WHILE,
 
     EOF
 }
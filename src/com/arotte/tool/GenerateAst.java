@@ -15,37 +15,69 @@ import java.util.List;
  * TODO: possibly rewrite this in a scripting language
  */
 public class GenerateAst {
+    // --sealed: seal the base classes and make the AST classes final
+    private static boolean sealed = false;
 
     public static void main(String[] args) throws IOException {
-        if (args.length != 1) {
-            System.err.println("Usage: generate_ast <output_directory>");
+        if (args.length == 2 && args[0].equals("--sealed")) {
+            sealed = true;
+        } else if (args.length != 1) {
+            System.err.println("Usage: generate_ast [--sealed] <output_directory>");
             System.exit(64);
         }
-        String outputDir = args[0];
+        String outputDir = args[args.length - 1];
 
         // generate AST class for expressions
-        defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign   : Token name, Expr value",
+        // fields after '|' are not set by the constructor, but filled in by the Resolver
+        defineAst(outputDir, "Expr", List.of(), Arrays.asList(
+                "Assign   : Token name, Expr value | int scope, int slot, Binding binding",
                 "Literal  : Object value",
                 "Logical  : Expr left, Token operator, Expr right",
                 "Grouping : Expr expression",
                 "Unary    : Token operator, Expr right",
                 "Binary   : Expr left, Token operator, Expr right",
-                "Variable : Token name"
+                "Call     : Expr callee, Token paren, List<Expr> arguments",
+                "Get      : Expr object, Token name | InlineCache cache",
+                "Set      : Expr object, Token name, Expr value | InlineCache cache",
+                "Array    : Token bracket, List<Expr> elements",
+                "Map      : Token bracket, List<Expr> keys, List<Expr> values",
+                "Index    : Expr object, Token bracket, Expr index",
+                "IndexSet : Expr object, Token bracket, Expr index, Expr value",
+                "Update      : Token name, Token operator, Expr value, boolean postfix"
+                        + " | int scope, int slot, Binding binding",
+                "UpdateField : Expr object, Token name, Token operator, Expr value, boolean postfix"
+                        + " | InlineCache cache",
+                "UpdateIndex : Expr object, Token bracket, Token operator, Expr index, Expr value,"
+                        + " boolean postfix",
+                "Super    : Token keyword, Token method, Variable receiver | InlineCache cache",
+                "Variable : Token name | int scope, int slot, Binding binding, Object constant"
         ));
 
         // generate AST class for statements
-        defineAst(outputDir, "Stmt", Arrays.asList(
+        // every statement remembers the line it starts on
+        defineAst(outputDir, "Stmt", List.of("int line"), Arrays.asList(
                 "Block      : List<Stmt> statements",
+                "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods"
+                        + " | boolean local, boolean boxed, int slot",
                 "Expression : Expr expression",
+                "Function   : Token name, List<Token> params, List<Stmt> body"
+                        + " | boolean local, boolean boxed, int slot,"
+                        + " int frameSize, boolean[] boxedParams, int[] captures,"
+                        + " int memo, String impure",
+                "ForIn      : Token keyword, Stmt.Var counter, Expr end, Expr step, Stmt body",
                 "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
+                "Parallel   : Token keyword, Stmt.Var counter, Token comparison, Expr end,"
+                        + " Expr step, Stmt body | List<Expr.Assign> reductions",
                 "Print      : Expr expression",
-                "Var        : Token name, Expr initializer",
+                "Return     : Token keyword, Expr value",
+                "Spawn      : Token keyword, Stmt.Function body",
+                "Var        : Token name, Expr initializer | boolean local, boolean boxed, int slot",
                 "While      : Expr condition, Stmt body"
         ));
     }
 
-    private static void defineAst(String outputDir, String baseName, List<String> grammar) throws IOException {
+    private static void defineAst(String outputDir, String baseName,
+                                  List<String> baseFields, List<String> grammar) throws IOException {
         String path = outputDir + "/" + baseName + ".java";
         PrintWriter writer = new PrintWriter(path, StandardCharsets.UTF_8);
 
@@ -54,9 +86,18 @@ public class GenerateAst {
         writer.println("import java.util.List;");
         writer.println();
         writer.println(javadoc(baseName));
-        writer.println("abstract class " + baseName + " {");
+        writer.println("abstract " + (sealed ? "sealed " : "") + "class " + baseName + " {");
 
         defineVisitor(writer, baseName, grammar);
+        defineKinds(writer, baseName, grammar);
+
+        // fields shared by all AST classes, filled in after construction
+        if (!baseFields.isEmpty()) {
+            writer.println(tab(1) + "// common fields");
+            for (String field : baseFields)
+                writer.println(tab(1) + field + ";");
+            writer.println();
+        }
 
         // the AST classes
         System.out.println("Generating inner classes.");
@@ -97,10 +138,40 @@ public class GenerateAst {
         System.out.println("Visitor interface generated.");
     }
 
+    /**
+     * Define an integer tag for every AST class, so that the
+     * interpreter can dispatch with a switch instead of a visitor.
+     * @param writer PrintWriter that prints the strings
+     */
+    private static void defineKinds(PrintWriter writer, String base, List<String> grammar) {
+        writer.println(tab(1) + "// kind tags of the AST classes");
+        for (int i = 0; i < grammar.size(); i++) {
+            String typeName = grammar.get(i).split(":")[0].trim();
+            writer.println(tab(1) + "static final int " + typeName.toUpperCase() + " = " + i + ";");
+        }
+        writer.println();
+
+        writer.println(tab(1) + "// kind tag of this node");
+        writer.println(tab(1) + "final int kind;");
+        writer.println();
+        writer.println(tab(1) + base + "(int kind) {");
+        writer.println(tab(2) + "this.kind = kind;");
+        writer.println(tab(1) + "}");
+        writer.println();
+        System.out.println("Kind tags generated.");
+    }
+
     private static void defineType(PrintWriter writer, String className, String fieldList, String base) {
 
         writer.println(tab(1) +
-                "static class " + className + " extends " + base + " {");
+                "static " + (sealed ? "final " : "") + "class " + className + " extends " + base + " {");
+
+        // mutable fields, after a '|'
+        String[] mutableFields = new String[0];
+        if (fieldList.contains("|")) {
+            mutableFields = fieldList.split("\\|")[1].trim().split(", ");
+            fieldList = fieldList.split("\\|")[0].trim();
+        }
 
         // fields of the class
         writer.println(tab(2) + "// fields");
@@ -108,11 +179,17 @@ public class GenerateAst {
         for (String field : fields) {
             writer.println(tab(2) + "final " + field + ";");
         }
+        if (mutableFields.length > 0) {
+            writer.println(tab(2) + "// filled in after construction");
+            for (String field : mutableFields)
+                writer.println(tab(2) + field + ";");
+        }
 
         // constructor
         writer.println(tab(2) + "// constructor");
         writer.println(tab(2) +
                 className + "(" + fieldList + ") {");
+        writer.println(tab(3) + "super(" + className.toUpperCase() + ");");
 
         // set fields to parameters
         for (String field : fields) {